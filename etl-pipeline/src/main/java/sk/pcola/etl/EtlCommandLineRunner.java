@@ -6,9 +6,11 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 import sk.pcola.etl.catalog.CategoryMatcher;
 import sk.pcola.etl.catalog.ProductNormalizer;
+import sk.pcola.etl.staging.humed.HumedFeedArchive;
 import sk.pcola.etl.staging.humed.HumedStagingService;
 import sk.pcola.etl.staging.humed.HumedSyncJob;
 
+import java.nio.file.Path;
 import java.util.Arrays;
 
 /**
@@ -17,8 +19,11 @@ import java.util.Arrays;
  * Použitie:
  *   java -jar etl-pipeline.jar --sync-humed
  *   java -jar etl-pipeline.jar --normalize
+ *   java -jar etl-pipeline.jar --normalize --full
  *   java -jar etl-pipeline.jar --sync-humed --normalize
  *   java -jar etl-pipeline.jar --stats
+ *   java -jar etl-pipeline.jar --rehash-humed
+ *   java -jar etl-pipeline.jar --replay-humed <snapshot>
  *
  * Bez argumentov aplikácia beží ako daemon so schedulermi.
  */
@@ -28,13 +33,19 @@ public class EtlCommandLineRunner implements CommandLineRunner {
     private static final Logger log = LoggerFactory.getLogger(EtlCommandLineRunner.class);
 
     private final HumedSyncJob humedSyncJob;
+    private final HumedStagingService humedStagingService;
+    private final HumedFeedArchive humedFeedArchive;
     private final ProductNormalizer productNormalizer;
     private final CategoryMatcher categoryMatcher;
 
     public EtlCommandLineRunner(HumedSyncJob humedSyncJob,
+                                HumedStagingService humedStagingService,
+                                HumedFeedArchive humedFeedArchive,
                                 ProductNormalizer productNormalizer,
                                 CategoryMatcher categoryMatcher) {
         this.humedSyncJob = humedSyncJob;
+        this.humedStagingService = humedStagingService;
+        this.humedFeedArchive = humedFeedArchive;
         this.productNormalizer = productNormalizer;
         this.categoryMatcher = categoryMatcher;
     }
@@ -47,12 +58,22 @@ public class EtlCommandLineRunner implements CommandLineRunner {
         }
 
         log.info("CLI arguments: {}", Arrays.toString(args));
+        boolean full = Arrays.asList(args).contains("--full");
 
-        for (String arg : args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
             switch (arg) {
                 case "--sync-humed" -> runHumedSync();
-                case "--normalize" -> runNormalize();
+                case "--normalize" -> runNormalize(full);
                 case "--stats" -> printStats();
+                case "--rehash-humed" -> runHumedRehash();
+                case "--replay-humed" -> {
+                    if (i + 1 < args.length) {
+                        runHumedReplay(args[++i]);
+                    } else {
+                        log.warn("--replay-humed requires a snapshot (file, name or checksum prefix)");
+                    }
+                }
                 case "--help" -> printHelp();
                 default -> {
                     if (!arg.startsWith("-")) {
@@ -78,14 +99,59 @@ public class EtlCommandLineRunner implements CommandLineRunner {
         }
     }
 
-    private void runNormalize() {
-        log.info("Running product normalization manually...");
+    private void runHumedRehash() {
+        log.info("Rehashing HUMED staging checksums...");
+        try {
+            int changed = humedStagingService.rehashChecksums();
+            log.info("HUMED rehash completed: {} checksums changed", changed);
+        } catch (Exception e) {
+            log.error("HUMED rehash failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replay archivovaného feedu: sync + normalizácia čo najrýchlejšie, s časmi jednotlivých fáz.
+     */
+    private void runHumedReplay(String snapshot) {
+        try {
+            Path snapshotPath = humedFeedArchive.resolve(snapshot);
+            log.info("Replaying HUMED snapshot {}...", snapshotPath);
+
+            long start = System.nanoTime();
+            HumedStagingService.UpsertResult sync = humedSyncJob.replay(snapshotPath);
+            long syncNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ProductNormalizer.NormalizeResult normalize = productNormalizer.normalizeHumed();
+            long normalizeNanos = System.nanoTime() - start;
+
+            log.info("HUMED replay completed:");
+            log.info("  Sync:      {} ms, {} products ({} inserted, {} updated, {} unchanged, {} failed), {} products/s",
+                    syncNanos / 1_000_000, sync.total(), sync.inserted(), sync.updated(),
+                    sync.unchanged(), sync.failed(), rate(sync.total(), syncNanos));
+            log.info("  Normalize: {} ms, {} products ({} created, {} updated, {} unchanged, {} failed), {} products/s",
+                    normalizeNanos / 1_000_000, normalize.processed(), normalize.created(),
+                    normalize.updated(), normalize.unchanged(), normalize.failed(),
+                    rate(normalize.processed(), normalizeNanos));
+            log.info("  Total:     {} ms", (syncNanos + normalizeNanos) / 1_000_000);
+        } catch (Exception e) {
+            log.error("HUMED replay failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private static long rate(long count, long nanos) {
+        return nanos > 0 ? count * 1_000_000_000L / nanos : 0;
+    }
+
+    private void runNormalize(boolean full) {
+        log.info("Running {} product normalization manually...", full ? "full" : "incremental");
         try {
-            ProductNormalizer.NormalizeResult result = productNormalizer.normalizeHumed();
+            ProductNormalizer.NormalizeResult result = productNormalizer.normalizeHumed(full);
             log.info("Normalization completed:");
             log.info("  Processed:       {}", result.processed());
             log.info("  Created:         {}", result.created());
             log.info("  Updated:         {}", result.updated());
+            log.info("  Unchanged:       {}", result.unchanged());
             log.info("  Skipped excluded: {}", result.skippedExcluded());
             log.info("  Skipped unmapped: {}", result.skippedUnmapped());
             log.info("  Failed:          {}", result.failed());
@@ -116,13 +182,20 @@ public class EtlCommandLineRunner implements CommandLineRunner {
             
             Options:
               --sync-humed    Run HUMED feed sync manually
-              --normalize     Run product normalization (staging -> catalog)
+              --normalize     Run product normalization (staging -> catalog), only rows
+                              changed since the last run
+              --full          With --normalize: normalize all staging rows
               --stats         Print mapping statistics
+              --rehash-humed  Recompute staged HUMED checksums (after checksum-algorithm change)
+              --replay-humed <snapshot>
+                              Sync + normalize an archived HUMED feed with timings
+                              (snapshot = file path, archive file name or checksum prefix)
               --help          Show this help
             
             Examples:
               java -jar etl-pipeline.jar --sync-humed --normalize
               java -jar etl-pipeline.jar --stats
+              java -jar etl-pipeline.jar --replay-humed 3f2a9c
             
             Without arguments, the application runs as a daemon with scheduled jobs.
             """);
@@ -0,0 +1,85 @@
+package sk.pcola.etl.catalog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import sk.pcola.etl.config.NormalizerConfig;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Audit mapovania kategórií (catalog.category_mapping_log).
+ *
+ * Loguje sa len zmena mapovania produktu oproti jeho poslednému záznamu,
+ * aktuálne mapovanie produktu je jeho posledný riadok podľa id (V014).
+ */
+@Component
+public class CategoryMappingLog {
+
+    private static final Logger log = LoggerFactory.getLogger(CategoryMappingLog.class);
+
+    private static final int QUEUE_CAPACITY = 4;
+
+    private static final String LATEST_MAPPINGS_SQL = """
+        SELECT DISTINCT ON (source_product_id)
+               source_product_id, target_category_id, matched_rule_id, match_type
+        FROM catalog.category_mapping_log
+        WHERE source = ?
+        ORDER BY source_product_id, id DESC
+        """;
+
+    private static final String INSERT_SQL = """
+        INSERT INTO catalog.category_mapping_log
+        (source, source_product_id, source_sku, source_category_raw,
+         matched_rule_id, target_category_id, match_type, mapped_at)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+
+    private final JdbcTemplate jdbc;
+    private final NormalizerConfig config;
+
+    public CategoryMappingLog(JdbcTemplate jdbc, NormalizerConfig config) {
+        this.jdbc = jdbc;
+        this.config = config;
+    }
+
+    /**
+     * Otvorí appender pre jeden beh - načíta posledné mapovanie každého produktu zdroja.
+     */
+    CategoryMappingLogAppender open(String source) {
+        Map<String, CategoryMatcher.MatchResult> lastResults = new ConcurrentHashMap<>();
+        jdbc.query(LATEST_MAPPINGS_SQL, (RowCallbackHandler) rs -> lastResults.put(
+                rs.getString("source_product_id"),
+                new CategoryMatcher.MatchResult(
+                        rs.getObject("target_category_id", Integer.class),
+                        rs.getObject("matched_rule_id", Integer.class),
+                        rs.getString("match_type"))),
+                source);
+        log.info("Loaded last category mapping of {} {} products", lastResults.size(), source);
+
+        return new CategoryMappingLogAppender(lastResults, batch -> insert(source, batch),
+                config.getMappingLogBatchSize(), QUEUE_CAPACITY);
+    }
+
+    /**
+     * Zapíše dávku jedným batchUpdate (PostgreSQL driver ju posiela bez round-tripu na riadok).
+     */
+    private void insert(String source, List<CategoryMappingLogAppender.Entry> batch) {
+        jdbc.batchUpdate(INSERT_SQL, batch.stream()
+                .map(e -> new Object[]{
+                        source,
+                        e.sourceProductId(),
+                        e.sourceSku(),
+                        e.sourceCategoryRaw(),
+                        e.result().matchedRuleId(),
+                        e.result().targetCategoryId(),
+                        e.result().matchType(),
+                        e.mappedAt()
+                })
+                .toList());
+    }
+}
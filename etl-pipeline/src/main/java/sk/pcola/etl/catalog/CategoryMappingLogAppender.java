@@ -0,0 +1,193 @@
+package sk.pcola.etl.catalog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Bufferovaný zápis category_mapping_log počas jedného behu normalizácie.
+ *
+ * {@link #append} porovná výsledok s posledným mapovaním produktu a pri zhode nič
+ * nezapíše. Zmeny sa skladajú do dávok, ktoré zapisuje jedno writer vlákno mimo
+ * transakcií normalizácie. Plná fronta blokuje volajúceho (backpressure).
+ * {@link #close()} zapíše zvyšok, počká na writer a vyhodí jeho prípadnú chybu.
+ *
+ * Volať sa môže z viacerých vlákien (paralelné partície normalizácie).
+ */
+class CategoryMappingLogAppender implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CategoryMappingLogAppender.class);
+
+    private static final List<Entry> POISON = List.of();
+
+    /**
+     * Jeden riadok category_mapping_log.
+     */
+    record Entry(String sourceProductId, String sourceSku, String sourceCategoryRaw,
+                 CategoryMatcher.MatchResult result, Timestamp mappedAt) {
+    }
+
+    private final Map<String, CategoryMatcher.MatchResult> lastResults;
+    private final Consumer<List<Entry>> batchWriter;
+    private final int batchSize;
+    private final BlockingQueue<List<Entry>> queue;
+    private final ExecutorService writer;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicInteger appended = new AtomicInteger();
+
+    private List<Entry> current;
+    private boolean closed = false;
+
+    /**
+     * @param lastResults posledné mapovanie podľa source_product_id (thread-safe mapa, appender ju aktualizuje)
+     * @param batchWriter zápis dávky do DB - volá sa z writer vlákna
+     */
+    CategoryMappingLogAppender(Map<String, CategoryMatcher.MatchResult> lastResults,
+                               Consumer<List<Entry>> batchWriter, int batchSize, int queueCapacity) {
+        this.lastResults = lastResults;
+        this.batchWriter = batchWriter;
+        this.batchSize = Math.max(batchSize, 1);
+        this.current = new ArrayList<>(this.batchSize);
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "mapping-log-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        writer.execute(this::writerLoop);
+    }
+
+    /**
+     * Zaradí výsledok mapovania produktu na zápis, ak sa líši od jeho posledného mapovania.
+     *
+     * @return true ak sa mapovanie zmenilo (bude zalogované)
+     */
+    boolean append(String sourceProductId, String sourceSku, String sourceCategoryRaw,
+                   CategoryMatcher.MatchResult result) {
+        CategoryMatcher.MatchResult previous = lastResults.put(sourceProductId, result);
+        if (result.equals(previous)) {
+            return false;
+        }
+
+        Entry entry = new Entry(sourceProductId, sourceSku, sourceCategoryRaw, result, Timestamp.from(Instant.now()));
+        List<Entry> full = null;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Mapping log appender is closed");
+            }
+            current.add(entry);
+            if (current.size() >= batchSize) {
+                full = current;
+                current = new ArrayList<>(batchSize);
+            }
+        }
+        appended.incrementAndGet();
+        if (full != null) {
+            submit(full);
+        }
+        return true;
+    }
+
+    /**
+     * Počet zaradených zmien mapovania.
+     */
+    int appended() {
+        return appended.get();
+    }
+
+    @Override
+    public void close() {
+        List<Entry> rest;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            rest = current;
+            current = List.of();
+        }
+        try {
+            if (!rest.isEmpty()) {
+                submit(rest);
+            }
+        } finally {
+            putQuietly(POISON);
+            writer.shutdown();
+            try {
+                if (!writer.awaitTermination(5, TimeUnit.MINUTES)) {
+                    log.warn("Mapping log writer did not finish in time");
+                    writer.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writer.shutdownNow();
+            }
+        }
+        rethrowFailure();
+        log.debug("Mapping log: {} changed mappings written", appended.get());
+    }
+
+    private void submit(List<Entry> batch) {
+        rethrowFailure();
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing mapping log batch", e);
+        }
+    }
+
+    private void putQuietly(List<Entry> batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writerLoop() {
+        while (true) {
+            List<Entry> batch;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == POISON) {
+                return;
+            }
+            // Po chybe už len vyprázdňuje frontu, aby neblokoval normalizáciu
+            if (failure.get() != null) {
+                continue;
+            }
+            try {
+                batchWriter.accept(batch);
+            } catch (Throwable t) {
+                log.error("Failed to write {} mapping log entries: {}", batch.size(), t.getMessage());
+                failure.compareAndSet(null, t);
+            }
+        }
+    }
+
+    private void rethrowFailure() {
+        Throwable t = failure.get();
+        if (t != null) {
+            throw t instanceof RuntimeException re
+                    ? re
+                    : new IllegalStateException("Mapping log writer failed", t);
+        }
+    }
+}
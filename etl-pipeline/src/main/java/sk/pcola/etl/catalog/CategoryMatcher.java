@@ -4,14 +4,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import sk.pcola.etl.config.NormalizerConfig;
 
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.util.Optional;
+import java.util.List;
 
 /**
  * Service pre mapovanie zdrojových kategórií na cieľové kategórie.
- * Používa pravidlá z catalog.category_rules tabuľky.
+ * Používa pravidlá z catalog.category_rules tabuľky, načítané do pamäti
+ * ({@link CategoryRuleSnapshot}) - mapovanie produktu nerobí žiadny SQL dotaz.
  *
  * Postup mapovania:
  * 1. Skontroluj či kategória nie je v exclusions
@@ -26,9 +26,13 @@ public class CategoryMatcher {
     private static final Logger log = LoggerFactory.getLogger(CategoryMatcher.class);
 
     private final JdbcTemplate jdbc;
+    private final NormalizerConfig config;
 
-    public CategoryMatcher(JdbcTemplate jdbc) {
+    private volatile CategoryRuleSnapshot snapshot;
+
+    public CategoryMatcher(JdbcTemplate jdbc, NormalizerConfig config) {
         this.jdbc = jdbc;
+        this.config = config;
     }
 
     /**
@@ -49,7 +53,7 @@ public class CategoryMatcher {
     }
 
     /**
-     * Nájde cieľovú kategóriu pre produkt.
+     * Nájde cieľovú kategóriu pre produkt (nad snapshotom pravidiel v pamäti).
      *
      * @param source názov zdroja (napr. "humed")
      * @param sourceCategoryName názov kategórie zo zdroja (napr. "Hygienický papier > Toaletný papier")
@@ -57,179 +61,70 @@ public class CategoryMatcher {
      * @return výsledok mapovania
      */
     public MatchResult match(String source, String sourceCategoryName, String productTitle) {
-
-        // 1. Skontroluj exclusions
-        if (isExcluded(source, sourceCategoryName)) {
-            return new MatchResult(null, null, "excluded");
-        }
-
-        // 2. Presná zhoda
-        Optional<MatchResult> result = matchExact(source, sourceCategoryName);
-        if (result.isPresent()) {
-            return result.get();
-        }
-
-        // 3. Pattern na kategóriu
-        result = matchCategoryPattern(source, sourceCategoryName);
-        if (result.isPresent()) {
-            return result.get();
-        }
-
-        // 4. Pattern na title
-        result = matchTitlePattern(source, productTitle);
-        if (result.isPresent()) {
-            return result.get();
+        if (snapshot == null) {
+            refreshRules();
         }
-
-        // 5. Unmapped
-        return new MatchResult(null, null, "unmapped");
+        return snapshot.match(source, sourceCategoryName, productTitle);
     }
 
     /**
-     * Skontroluje či kategória nie je v exclusions.
+     * Načíta aktívne pravidlá a vylúčenia do nového snapshotu, ak sa od posledného
+     * načítania zmenila verzia pravidiel (catalog.category_rules_version).
+     * Volá sa na začiatku každého behu normalizácie - pri nezmenených pravidlách
+     * ostáva snapshot aj s cache mapovania podľa kategórie.
      */
-    private boolean isExcluded(String source, String sourceCategoryName) {
-        if (sourceCategoryName == null) {
-            return false;
+    public synchronized void refreshRules() {
+        Long version = jdbc.queryForObject(
+                "SELECT version FROM catalog.category_rules_version WHERE id = 1", Long.class);
+        long current = version != null ? version : 0;
+        if (snapshot != null && snapshot.version() == current) {
+            log.debug("Category rules unchanged (version {})", current);
+            return;
         }
 
-        String sql = """
-            SELECT COUNT(*) FROM catalog.category_exclusions
-            WHERE source = ?
-              AND is_active = true
-              AND ? LIKE source_category_pattern
-            """;
-
-        Integer count = jdbc.queryForObject(sql, Integer.class, source, sourceCategoryName);
-        return count != null && count > 0;
-    }
-
-    /**
-     * Presná zhoda na source_category_exact.
-     */
-    private Optional<MatchResult> matchExact(String source, String sourceCategoryName) {
-        if (sourceCategoryName == null) {
-            return Optional.empty();
-        }
-
-        String sql = """
-            SELECT id, target_category_id
+        List<CategoryRuleSnapshot.Rule> rules = jdbc.query("""
+            SELECT id, source, source_category_exact, source_category_pattern, title_pattern,
+                   target_category_id, priority
             FROM catalog.category_rules
-            WHERE source = ?
-              AND source_category_exact = ?
-              AND is_active = true
-            ORDER BY priority
-            LIMIT 1
-            """;
-
-        return jdbc.query(sql, rs -> {
-            if (rs.next()) {
-                return Optional.of(new MatchResult(
-                        rs.getInt("target_category_id"),
+            WHERE is_active = true
+            """,
+                (rs, rowNum) -> new CategoryRuleSnapshot.Rule(
                         rs.getInt("id"),
-                        "exact"
-                ));
-            }
-            return Optional.empty();
-        }, source, sourceCategoryName);
-    }
-
-    /**
-     * Pattern matching na source_category_pattern.
-     */
-    private Optional<MatchResult> matchCategoryPattern(String source, String sourceCategoryName) {
-        if (sourceCategoryName == null) {
-            return Optional.empty();
-        }
-
-        String sql = """
-            SELECT id, target_category_id
-            FROM catalog.category_rules
-            WHERE source = ?
-              AND source_category_pattern IS NOT NULL
-              AND ? LIKE source_category_pattern
-              AND is_active = true
-            ORDER BY priority
-            LIMIT 1
-            """;
-
-        return jdbc.query(sql, rs -> {
-            if (rs.next()) {
-                return Optional.of(new MatchResult(
-                        rs.getInt("target_category_id"),
-                        rs.getInt("id"),
-                        "pattern"
-                ));
-            }
-            return Optional.empty();
-        }, source, sourceCategoryName);
-    }
-
-    /**
-     * Pattern matching na title_pattern.
-     */
-    private Optional<MatchResult> matchTitlePattern(String source, String productTitle) {
-        if (productTitle == null) {
-            return Optional.empty();
-        }
-
-        String sql = """
-            SELECT id, target_category_id
-            FROM catalog.category_rules
-            WHERE source = ?
-              AND title_pattern IS NOT NULL
-              AND ? ILIKE title_pattern
-              AND is_active = true
-            ORDER BY priority
-            LIMIT 1
-            """;
-
-        return jdbc.query(sql, rs -> {
-            if (rs.next()) {
-                return Optional.of(new MatchResult(
+                        rs.getString("source"),
+                        rs.getString("source_category_exact"),
+                        rs.getString("source_category_pattern"),
+                        rs.getString("title_pattern"),
                         rs.getInt("target_category_id"),
+                        rs.getInt("priority")));
+
+        List<CategoryRuleSnapshot.Exclusion> exclusions = jdbc.query("""
+            SELECT id, source, source_category_pattern
+            FROM catalog.category_exclusions
+            WHERE is_active = true
+            """,
+                (rs, rowNum) -> new CategoryRuleSnapshot.Exclusion(
                         rs.getInt("id"),
-                        "title"
-                ));
-            }
-            return Optional.empty();
-        }, source, productTitle);
-    }
-
-    /**
-     * Zaloguje výsledok mapovania do category_mapping_log.
-     */
-    public void logMapping(String source, String sourceProductId, String sourceSku,
-                           String sourceCategoryRaw, MatchResult result) {
-        String sql = """
-            INSERT INTO catalog.category_mapping_log 
-            (source, source_product_id, source_sku, source_category_raw, 
-             matched_rule_id, target_category_id, match_type, mapped_at)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
-            """;
+                        rs.getString("source"),
+                        rs.getString("source_category_pattern")));
 
-        jdbc.update(sql,
-                source,
-                sourceProductId,
-                sourceSku,
-                sourceCategoryRaw,
-                result.matchedRuleId(),
-                result.targetCategoryId(),
-                result.matchType(),
-                Timestamp.from(Instant.now())
-        );
+        snapshot = new CategoryRuleSnapshot(rules, exclusions, current, config.getCategoryCacheSize());
+        log.info("Loaded {} category rules and {} exclusions (version {})", rules.size(), exclusions.size(), current);
     }
 
     /**
-     * Získa štatistiky mapovania.
+     * Získa štatistiky aktuálneho mapovania (posledný záznam každého produktu v category_mapping_log).
      */
     public MappingStats getStats(String source) {
         String sql = """
-            SELECT 
+            SELECT
                 match_type,
                 COUNT(*) as count
-            FROM catalog.category_mapping_log
-            WHERE source = ?
+            FROM (
+                SELECT DISTINCT ON (source_product_id) match_type
+                FROM catalog.category_mapping_log
+                WHERE source = ?
+                ORDER BY source_product_id, id DESC
+            ) latest
             GROUP BY match_type
             """;
 
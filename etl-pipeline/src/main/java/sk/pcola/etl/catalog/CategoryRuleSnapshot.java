@@ -0,0 +1,222 @@
+package sk.pcola.etl.catalog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nemenný snapshot aktívnych category_rules a category_exclusions pre mapovanie v pamäti.
+ *
+ * LIKE / ILIKE vzory sú skompilované ({@link LikePattern}), presné zhody v hash mape,
+ * title patterny v {@link TitlePatternMatcher} (Aho-Corasick pre {@code %text%}).
+ * Pravidlá každého kroku sú zoradené podľa (priority, id) - vyhrá prvé zhodné,
+ * rovnako ako ORDER BY priority, id LIMIT 1 v SQL.
+ *
+ * Výsledok krokov podľa kategórie (exclusion, exact, pattern) sa drží v ohraničenej
+ * LRU cache podľa (source, kategória) - per produkt sa vyhodnocuje len title pattern.
+ * Snapshot patrí jednej verzii pravidiel (catalog.category_rules_version), pri zmene
+ * pravidiel ho CategoryMatcher nahradí novým aj s prázdnou cache.
+ */
+final class CategoryRuleSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(CategoryRuleSnapshot.class);
+
+    private static final Comparator<Rule> RULE_ORDER =
+            Comparator.comparingInt(Rule::priority).thenComparingInt(Rule::id);
+
+    /**
+     * Riadok catalog.category_rules.
+     */
+    record Rule(int id, String source, String categoryExact, String categoryPattern, String titlePattern,
+                int targetCategoryId, int priority) {
+    }
+
+    /**
+     * Riadok catalog.category_exclusions.
+     */
+    record Exclusion(int id, String source, String categoryPattern) {
+    }
+
+    private record CompiledRule(int id, int targetCategoryId, LikePattern pattern) {
+    }
+
+    private record CacheKey(String source, String sourceCategoryName) {
+    }
+
+    /** Výsledok krokov podľa kategórie, keď žiadny nezabral - ďalej rozhoduje title pattern. */
+    private static final CategoryMatcher.MatchResult NO_CATEGORY_MATCH =
+            new CategoryMatcher.MatchResult(null, null, "unmapped");
+
+    /**
+     * Pravidlá jedného zdroja.
+     */
+    private static final class SourceRules {
+        final List<LikePattern> exclusions = new ArrayList<>();
+        final Map<String, CompiledRule> exact = new HashMap<>();
+        final List<CompiledRule> categoryPatterns = new ArrayList<>();
+        final List<CompiledRule> titlePatterns = new ArrayList<>();
+        TitlePatternMatcher titleMatcher = new TitlePatternMatcher(List.of());
+    }
+
+    private static final SourceRules EMPTY = new SourceRules();
+
+    private final Map<String, SourceRules> bySource = new HashMap<>();
+    private final long version;
+    private final Map<CacheKey, CategoryMatcher.MatchResult> categoryCache;
+
+    /**
+     * @param version verzia pravidiel, z ktorej snapshot vznikol
+     * @param cacheSize max. počet (source, kategória) v cache, 0 = bez cache
+     */
+    CategoryRuleSnapshot(List<Rule> rules, List<Exclusion> exclusions, long version, int cacheSize) {
+        this.version = version;
+        this.categoryCache = cacheSize > 0 ? lruCache(cacheSize) : null;
+
+        for (Exclusion exclusion : exclusions) {
+            LikePattern pattern = compile(exclusion.categoryPattern(), false, "exclusion", exclusion.id());
+            if (pattern != null) {
+                sourceRules(exclusion.source()).exclusions.add(pattern);
+            }
+        }
+
+        List<Rule> ordered = new ArrayList<>(rules);
+        ordered.sort(RULE_ORDER);
+        for (Rule rule : ordered) {
+            SourceRules target = sourceRules(rule.source());
+            if (rule.categoryExact() != null) {
+                target.exact.putIfAbsent(rule.categoryExact(),
+                        new CompiledRule(rule.id(), rule.targetCategoryId(), null));
+            }
+            if (rule.categoryPattern() != null) {
+                LikePattern pattern = compile(rule.categoryPattern(), false, "rule", rule.id());
+                if (pattern != null) {
+                    target.categoryPatterns.add(new CompiledRule(rule.id(), rule.targetCategoryId(), pattern));
+                }
+            }
+            if (rule.titlePattern() != null) {
+                LikePattern pattern = compile(rule.titlePattern(), true, "rule", rule.id());
+                if (pattern != null) {
+                    target.titlePatterns.add(new CompiledRule(rule.id(), rule.targetCategoryId(), pattern));
+                }
+            }
+        }
+
+        for (SourceRules sourceRules : bySource.values()) {
+            sourceRules.titleMatcher = new TitlePatternMatcher(
+                    sourceRules.titlePatterns.stream().map(CompiledRule::pattern).toList());
+        }
+    }
+
+    /**
+     * Mapovanie v poradí: exclusion, exact, category pattern, title pattern, inak unmapped.
+     */
+    CategoryMatcher.MatchResult match(String source, String sourceCategoryName, String productTitle) {
+        SourceRules rules = bySource.getOrDefault(source, EMPTY);
+
+        if (sourceCategoryName != null) {
+            CategoryMatcher.MatchResult byCategory = matchCategory(source, sourceCategoryName, rules);
+            if (byCategory != NO_CATEGORY_MATCH) {
+                return byCategory;
+            }
+        }
+
+        int titleIndex = rules.titleMatcher.firstMatch(productTitle);
+        if (titleIndex >= 0) {
+            CompiledRule title = rules.titlePatterns.get(titleIndex);
+            return new CategoryMatcher.MatchResult(title.targetCategoryId(), title.id(), "title");
+        }
+
+        return new CategoryMatcher.MatchResult(null, null, "unmapped");
+    }
+
+    long version() {
+        return version;
+    }
+
+    /**
+     * Kroky exclusion, exact a category pattern - cez cache, ak je zapnutá.
+     */
+    private CategoryMatcher.MatchResult matchCategory(String source, String sourceCategoryName, SourceRules rules) {
+        if (categoryCache == null) {
+            return evaluateCategory(sourceCategoryName, rules);
+        }
+        CacheKey key = new CacheKey(source, sourceCategoryName);
+        CategoryMatcher.MatchResult cached;
+        synchronized (categoryCache) {
+            cached = categoryCache.get(key);
+        }
+        if (cached != null) {
+            return cached;
+        }
+        CategoryMatcher.MatchResult result = evaluateCategory(sourceCategoryName, rules);
+        synchronized (categoryCache) {
+            categoryCache.put(key, result);
+        }
+        return result;
+    }
+
+    private static CategoryMatcher.MatchResult evaluateCategory(String sourceCategoryName, SourceRules rules) {
+        for (LikePattern exclusion : rules.exclusions) {
+            if (exclusion.matches(sourceCategoryName)) {
+                return new CategoryMatcher.MatchResult(null, null, "excluded");
+            }
+        }
+
+        CompiledRule exact = rules.exact.get(sourceCategoryName);
+        if (exact != null) {
+            return new CategoryMatcher.MatchResult(exact.targetCategoryId(), exact.id(), "exact");
+        }
+
+        CompiledRule pattern = firstMatch(rules.categoryPatterns, sourceCategoryName);
+        if (pattern != null) {
+            return new CategoryMatcher.MatchResult(pattern.targetCategoryId(), pattern.id(), "pattern");
+        }
+        return NO_CATEGORY_MATCH;
+    }
+
+    /**
+     * LinkedHashMap v poradí prístupu - pri prekročení veľkosti vypadne najdlhšie nepoužitá kategória.
+     */
+    private static Map<CacheKey, CategoryMatcher.MatchResult> lruCache(int maxSize) {
+        return new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CategoryMatcher.MatchResult> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private static CompiledRule firstMatch(List<CompiledRule> rules, String text) {
+        if (text == null) {
+            return null;
+        }
+        for (CompiledRule rule : rules) {
+            if (rule.pattern().matches(text)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private SourceRules sourceRules(String source) {
+        return bySource.computeIfAbsent(source, s -> new SourceRules());
+    }
+
+    /**
+     * Neplatný vzor (PostgreSQL by ho odmietol chybou) sa preskočí - nikdy sa nezhoduje.
+     */
+    private static LikePattern compile(String pattern, boolean ignoreCase, String kind, int id) {
+        try {
+            return ignoreCase ? LikePattern.ilike(pattern) : LikePattern.like(pattern);
+        } catch (IllegalArgumentException e) {
+            log.warn("Skipping category {} {}: {}", kind, id, e.getMessage());
+            return null;
+        }
+    }
+}
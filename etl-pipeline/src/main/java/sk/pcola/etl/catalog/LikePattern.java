@@ -0,0 +1,110 @@
+package sk.pcola.etl.catalog;
+
+import java.util.regex.Pattern;
+
+/**
+ * SQL LIKE / ILIKE vzor skompilovaný do regexu.
+ *
+ * Sémantika ako v PostgreSQL: {@code %} = ľubovoľný reťazec (aj prázdny, aj cez nový riadok),
+ * {@code _} = práve jeden znak, {@code \} = escape nasledujúceho znaku, zhoda musí pokryť
+ * celý text. ILIKE porovnáva bez ohľadu na veľkosť písmen (Unicode), diakritiku rozlišuje.
+ *
+ * Vzor tvaru {@code %text%} bez ďalších wildcardov je hľadanie podreťazca -
+ * {@link #substring()} vráti jeho text (pre {@link TitlePatternMatcher}).
+ */
+final class LikePattern {
+
+    private static final char ESCAPE = '\\';
+
+    private final String source;
+    private final Pattern regex;
+    private final String substring;
+
+    private LikePattern(String source, Pattern regex, String substring) {
+        this.source = source;
+        this.regex = regex;
+        this.substring = substring;
+    }
+
+    /**
+     * Vzor pre LIKE (rozlišuje veľkosť písmen).
+     */
+    static LikePattern like(String pattern) {
+        return compile(pattern, false);
+    }
+
+    /**
+     * Vzor pre ILIKE.
+     */
+    static LikePattern ilike(String pattern) {
+        return compile(pattern, true);
+    }
+
+    /**
+     * @throws IllegalArgumentException ak vzor končí escape znakom (PostgreSQL ho tiež odmietne)
+     */
+    private static LikePattern compile(String pattern, boolean ignoreCase) {
+        StringBuilder regex = new StringBuilder(pattern.length() + 16);
+        StringBuilder literal = new StringBuilder();
+        // Tvar vzoru: L = literál, % a _ = wildcard (napr. "%L%")
+        StringBuilder shape = new StringBuilder();
+        String lastLiteral = null;
+
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == ESCAPE) {
+                if (++i == pattern.length()) {
+                    throw new IllegalArgumentException("LIKE pattern must not end with escape character: " + pattern);
+                }
+                literal.append(pattern.charAt(i));
+            } else if (c == '%' || c == '_') {
+                if (!literal.isEmpty()) {
+                    lastLiteral = literal.toString();
+                    shape.append('L');
+                }
+                appendLiteral(regex, literal);
+                regex.append(c == '%' ? ".*" : ".");
+                shape.append(c);
+            } else {
+                literal.append(c);
+            }
+        }
+        if (!literal.isEmpty()) {
+            shape.append('L');
+        }
+        appendLiteral(regex, literal);
+
+        int flags = Pattern.DOTALL;
+        if (ignoreCase) {
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        }
+        return new LikePattern(pattern, Pattern.compile(regex.toString(), flags),
+                "%L%".contentEquals(shape) ? lastLiteral : null);
+    }
+
+    private static void appendLiteral(StringBuilder regex, StringBuilder literal) {
+        if (!literal.isEmpty()) {
+            regex.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * {@code text LIKE pattern} - NULL text sa nezhoduje.
+     */
+    boolean matches(String text) {
+        return text != null && regex.matcher(text).matches();
+    }
+
+    /**
+     * Text podreťazca pre vzor {@code %text%}, inak null.
+     */
+    String substring() {
+        return substring;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -0,0 +1,141 @@
+package sk.pcola.etl.catalog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import sk.pcola.etl.config.NormalizerConfig;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Watermark inkrementálnej normalizácie (catalog.normalization_runs).
+ *
+ * Beh spracuje len staging riadky s updated_at po watermarku posledného úspešného behu.
+ * Watermark sa posúva o etl.normalize.watermark-overlap späť - NOW() v staging je čas
+ * začiatku zapisujúcej transakcie, riadok môže byť commitnutý až po novšom watermarku.
+ * Opätovné spracovanie riadku je idempotentné.
+ *
+ * Plný beh nastane pri prvom behu, pri --full a pri zmene pravidiel mapovania
+ * (verzia v catalog.category_rules_version - spoločná pre všetky zdroje).
+ *
+ * Watermark sa posunie aj pri chybných produktoch - ich feed_id sa uložia do behu
+ * (failed_source_ids) a ďalší inkrementálny beh ich spracuje znova, aj keď sa ich
+ * staging riadok nezmení. Trvalo chybný produkt tak nezastaví inkrementálne behy.
+ */
+@Service
+public class NormalizationRunService {
+
+    private static final Logger log = LoggerFactory.getLogger(NormalizationRunService.class);
+
+    private final JdbcTemplate jdbc;
+    private final NormalizerConfig config;
+
+    public NormalizationRunService(JdbcTemplate jdbc, NormalizerConfig config) {
+        this.jdbc = jdbc;
+        this.config = config;
+    }
+
+    /**
+     * Rozsah jedného behu.
+     *
+     * @param since spracovať riadky s updated_at &gt; since, null = všetky (plný beh)
+     * @param watermark MAX(updated_at) zo staging na začiatku behu - uloží sa po úspechu
+     * @param retrySourceIds chybné produkty posledného behu - spracujú sa aj bez zmeny v staging
+     */
+    public record Window(Instant startedAt, Timestamp since, Timestamp watermark, String[] retrySourceIds,
+                         String rulesFingerprint) {
+        public boolean isFull() {
+            return since == null;
+        }
+    }
+
+    /**
+     * Určí rozsah behu podľa posledného úspešného behu zdroja.
+     */
+    public Window open(String source, String stagingTable, boolean forceFull) {
+        Instant startedAt = Instant.now();
+        Timestamp watermark = jdbc.queryForObject(
+                "SELECT MAX(updated_at) FROM " + stagingTable, Timestamp.class);
+        String fingerprint = rulesFingerprint();
+
+        LastRun last = jdbc.query("""
+            SELECT watermark, rules_fingerprint, failed_source_ids
+            FROM catalog.normalization_runs
+            WHERE source = ?
+            ORDER BY id DESC
+            LIMIT 1
+            """,
+                rs -> rs.next()
+                        ? new LastRun(rs.getTimestamp("watermark"), rs.getString("rules_fingerprint"),
+                                toStrings(rs.getArray("failed_source_ids")))
+                        : null,
+                source);
+
+        Timestamp since = null;
+        String[] retryIds = new String[0];
+        if (forceFull) {
+            log.info("Full {} normalization requested", source);
+        } else if (last == null || last.watermark() == null) {
+            log.info("No previous {} normalization run, running full", source);
+        } else if (!Objects.equals(last.rulesFingerprint(), fingerprint)) {
+            log.info("Category rules changed since last {} run, running full normalization", source);
+        } else {
+            since = Timestamp.from(last.watermark().toInstant().minus(config.getWatermarkOverlap()));
+            retryIds = last.failedSourceIds();
+            log.info("Incremental {} normalization of staging rows updated after {}, retrying {} failed products",
+                    source, since, retryIds.length);
+        }
+
+        Timestamp lastWatermark = last != null ? last.watermark() : null;
+        return new Window(startedAt, since, watermark != null ? watermark : lastWatermark, retryIds, fingerprint);
+    }
+
+    /**
+     * Uloží dokončený beh - jeho watermark a chybné produkty použije ďalší beh.
+     */
+    public void complete(String source, Window window, ProductNormalizer.NormalizeResult result) {
+        List<String> failedIds = result.failedSourceIds();
+        if (!failedIds.isEmpty()) {
+            log.warn("{} {} products failed, next run will retry them", failedIds.size(), source);
+        }
+
+        jdbc.update("""
+            INSERT INTO catalog.normalization_runs (
+                source, started_at, is_full, watermark, rules_fingerprint,
+                products_processed, products_created, products_updated, products_failed, failed_source_ids
+            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?::text[])
+            """,
+                source,
+                Timestamp.from(window.startedAt()),
+                window.isFull(),
+                window.watermark(),
+                window.rulesFingerprint(),
+                result.processed(),
+                result.created(),
+                result.updated(),
+                result.failed(),
+                failedIds.isEmpty() ? null : failedIds.toArray(String[]::new)
+        );
+    }
+
+    /**
+     * Verzia pravidiel a vylúčení - každý insert, update aj delete ju zvýši (V015),
+     * rovnako ako pri obnove snapshotu v CategoryMatcher.
+     */
+    private String rulesFingerprint() {
+        return jdbc.queryForObject(
+                "SELECT version::text FROM catalog.category_rules_version WHERE id = 1", String.class);
+    }
+
+    private static String[] toStrings(java.sql.Array array) throws SQLException {
+        return array != null ? (String[]) array.getArray() : new String[0];
+    }
+
+    private record LastRun(Timestamp watermark, String rulesFingerprint, String[] failedSourceIds) {
+    }
+}
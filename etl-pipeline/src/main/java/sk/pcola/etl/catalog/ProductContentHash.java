@@ -0,0 +1,60 @@
+package sk.pcola.etl.catalog;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Hash obsahu normalizovaného produktu (catalog.products.content_hash).
+ *
+ * Zrkadlí SQL funkciu catalog.product_content_hash (V013) - oba musia dať rovnaký
+ * výsledok, aby Java aj SQL engine rozpoznali nezmenený produkt:
+ * md5 hodnôt v textovom tvare PostgreSQL oddelených znakom 0x1f, NULL = {@code \N}.
+ * Ceny a hmotnosť musia mať škálu stĺpca (numeric(12,4), numeric(5,2), numeric(10,4)),
+ * JSON je text z jsonb stĺpca.
+ */
+final class ProductContentHash {
+
+    private static final char SEPARATOR = 0x1f;
+    private static final String NULL = "\\N";
+
+    private ProductContentHash() {
+    }
+
+    static String of(String name, String description, Integer categoryId,
+                     BigDecimal priceCost, BigDecimal priceB2b, BigDecimal marginPercent,
+                     BigDecimal weightKg, Integer packQuantity,
+                     String imagesJson, String attributesJson, String stockStatus) {
+        String content = String.join(String.valueOf(SEPARATOR),
+                text(name),
+                text(description),
+                text(categoryId),
+                text(priceCost),
+                text(priceB2b),
+                text(marginPercent),
+                text(weightKg),
+                text(packQuantity),
+                text(imagesJson),
+                text(attributesJson),
+                text(stockStatus));
+
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            return HexFormat.of().formatHex(md5.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+
+    /**
+     * Textový tvar hodnoty ako v PostgreSQL (BigDecimal bez exponentu, so svojou škálou).
+     */
+    private static String text(Object value) {
+        if (value == null) {
+            return NULL;
+        }
+        return value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+    }
+}
@@ -1,32 +1,50 @@
 package sk.pcola.etl.catalog;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import sk.pcola.etl.config.NormalizerConfig;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * Normalizácia produktov zo staging.humed_raw do catalog.products.
  * 
  * Proces:
- * 1. Načítaj produkty zo staging (is_excluded = false)
+ * 1. Načítaj produkty zo staging (is_excluded = false, nie sú zmiznuté z feedu),
+ *    pri inkrementálnom behu len zmenené od posledného behu (NormalizationRunService)
  * 2. Aplikuj category mapping
  * 3. Vypočítaj maržu z cien (price_cost, price_b2b sú z feedu)
  * 4. Upsert do catalog.products + catalog.product_sources
+ *
+ * Staging sa číta kurzorom a zapisuje po etl.normalize.chunk-size produktoch
+ * v samostatných transakciách, chybný produkt sa vráti na savepoint.
+ * Pri etl.normalize.partitions &gt; 1 beží paralelne po hash partíciách feed_id.
+ *
+ * Pri etl.normalize.engine=sql celý beh urobí {@link SqlProductNormalizer} set-based v SQL.
  */
 @Service
 public class ProductNormalizer {
@@ -35,14 +53,75 @@ public class ProductNormalizer {
 
     private static final String SOURCE_HUMED = "humed";
 
+    /**
+     * Produkty zo staging - %s = filter zmenených riadkov pri inkrementálnom behu.
+     */
+    private static final String STAGING_PRODUCTS_SQL = """
+        SELECT feed_id, sku, title, description,
+               price_purchase, price_retail, weight_grams,
+               deepest_category_path, pack_quantity,
+               images, attributes, availability
+        FROM staging.humed_raw
+        WHERE is_excluded = false
+          AND missing_since IS NULL
+          %s
+        ORDER BY feed_id
+        """;
+
+    private static final String UPDATE_PRODUCT_SQL = """
+        UPDATE catalog.products SET
+            name = ?,
+            description = ?,
+            category_id = ?,
+            price_cost = ?,
+            price_b2b = ?,
+            margin_percent = ?,
+            weight_kg = ?,
+            pack_quantity = ?,
+            images = ?::jsonb,
+            attributes = ?::jsonb,
+            stock_status = ?,
+            content_hash = ?,
+            updated_at = ?
+        WHERE id = ?
+          AND content_hash IS DISTINCT FROM ?
+        """;
+
+    private static final String UPDATE_PRODUCT_SOURCE_SQL = """
+        UPDATE catalog.product_sources SET
+            source_price_purchase = ?,
+            source_price_retail = ?,
+            last_seen_at = ?
+        WHERE product_id = ? AND source = ?
+        """;
+
     private final JdbcTemplate jdbc;
-    private final ObjectMapper objectMapper;
     private final CategoryMatcher categoryMatcher;
-
-    public ProductNormalizer(JdbcTemplate jdbc, ObjectMapper objectMapper, CategoryMatcher categoryMatcher) {
+    private final CategoryMappingLog mappingLog;
+    private final SqlProductNormalizer sqlNormalizer;
+    private final NormalizationRunService runService;
+    private final NormalizerConfig config;
+    private final TransactionTemplate readTx;
+    private final TransactionTemplate chunkTx;
+    private final TransactionTemplate productTx;
+
+    public ProductNormalizer(JdbcTemplate jdbc, CategoryMatcher categoryMatcher, CategoryMappingLog mappingLog,
+                             SqlProductNormalizer sqlNormalizer, NormalizationRunService runService,
+                             NormalizerConfig config, PlatformTransactionManager transactionManager) {
         this.jdbc = jdbc;
-        this.objectMapper = objectMapper;
         this.categoryMatcher = categoryMatcher;
+        this.mappingLog = mappingLog;
+        this.sqlNormalizer = sqlNormalizer;
+        this.runService = runService;
+        this.config = config;
+
+        // Kurzor nad staging potrebuje transakciu, inak driver načíta celý výsledok naraz
+        this.readTx = new TransactionTemplate(transactionManager);
+        this.readTx.setReadOnly(true);
+        this.chunkTx = new TransactionTemplate(transactionManager);
+        this.chunkTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.productTx = new TransactionTemplate(transactionManager);
+        this.productTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
     }
 
     /**
@@ -52,134 +131,275 @@ public class ProductNormalizer {
             int processed,
             int created,
             int updated,
+            int unchanged,
             int skippedExcluded,
             int skippedUnmapped,
-            int failed
-    ) {}
+            int failed,
+            List<String> failedSourceIds
+    ) {
+        /**
+         * Súčet výsledkov (paralelné partície).
+         */
+        public NormalizeResult plus(NormalizeResult other) {
+            return new NormalizeResult(
+                    processed + other.processed,
+                    created + other.created,
+                    updated + other.updated,
+                    unchanged + other.unchanged,
+                    skippedExcluded + other.skippedExcluded,
+                    skippedUnmapped + other.skippedUnmapped,
+                    failed + other.failed,
+                    Stream.concat(failedSourceIds.stream(), other.failedSourceIds.stream()).toList()
+            );
+        }
+    }
 
     /**
-     * Normalizuje všetky HUMED produkty zo staging do catalog.
+     * Normalizuje HUMED produkty zmenené od posledného behu.
      */
-    @Transactional
     public NormalizeResult normalizeHumed() {
-        log.info("Starting HUMED product normalization");
+        return normalizeHumed(false);
+    }
 
-        int processed = 0;
-        int created = 0;
-        int updated = 0;
-        int skippedExcluded = 0;
-        int skippedUnmapped = 0;
-        int failed = 0;
-
-        // Načítaj všetky produkty zo staging
-        List<StagingProduct> stagingProducts = loadStagingProducts();
-        log.info("Loaded {} products from staging", stagingProducts.size());
-
-        for (StagingProduct staging : stagingProducts) {
-            processed++;
-
-            try {
-                // Získaj najhlbšiu kategóriu
-                String categoryPath = extractDeepestCategoryPath(staging.categoriesJson());
-
-                // Aplikuj category matching
-                CategoryMatcher.MatchResult matchResult = categoryMatcher.match(
-                        SOURCE_HUMED,
-                        categoryPath,
-                        staging.title()
-                );
-
-                // Zaloguj mapovanie
-                categoryMatcher.logMapping(
-                        SOURCE_HUMED,
-                        staging.feedId(),
-                        staging.sku(),
-                        categoryPath,
-                        matchResult
-                );
-
-                // Preskočenie excluded
-                if (matchResult.isExcluded()) {
-                    markAsExcluded(staging.feedId(), "Category excluded");
-                    skippedExcluded++;
-                    continue;
-                }
+    /**
+     * Normalizuje HUMED produkty zo staging do catalog.
+     * Watermark sa posunie až po dokončení celého behu - po páde sa tie isté produkty
+     * spracujú znova. Chybné produkty zopakuje ďalší beh podľa feed_id.
+     *
+     * @param full všetky produkty bez ohľadu na watermark
+     */
+    public NormalizeResult normalizeHumed(boolean full) {
+        NormalizationRunService.Window window = runService.open(SOURCE_HUMED, "staging.humed_raw", full);
 
-                // Preskočenie unmapped
-                if (!matchResult.isMatched()) {
-                    log.debug("Unmapped product: {} - {}", staging.sku(), categoryPath);
-                    skippedUnmapped++;
-                    continue;
-                }
+        NormalizeResult result = config.getEngine() == NormalizerConfig.Engine.SQL
+                ? sqlNormalizer.normalizeHumed(window.since(), window.retrySourceIds())
+                : normalizeProducts(window.since(), window.retrySourceIds());
 
-                // Upsert do catalog
-                boolean isNew = upsertProduct(staging, matchResult.targetCategoryId());
-                if (isNew) {
-                    created++;
-                } else {
-                    updated++;
-                }
+        runService.complete(SOURCE_HUMED, window, result);
+        return result;
+    }
 
-            } catch (Exception e) {
-                log.error("Failed to normalize product {}: {}", staging.feedId(), e.getMessage());
-                failed++;
-            }
+    /**
+     * Java normalizácia - pri etl.normalize.partitions &gt; 1 paralelne po hash partíciách feed_id.
+     * Každá partícia má vlastné vlákno, kurzor a chunk transakcie, výsledky sa na konci sčítajú.
+     */
+    private NormalizeResult normalizeProducts(Timestamp since, String[] retryIds) {
+        log.info("Starting HUMED product normalization");
 
-            if (processed % 500 == 0) {
-                log.info("Processed {} products", processed);
+        int partitions = Math.max(config.getPartitions(), 1);
+        categoryMatcher.refreshRules();
+        ProductLookup lookup = loadProductLookup();
+        NormalizeResult result;
+        try (CategoryMappingLogAppender mappings = mappingLog.open(SOURCE_HUMED)) {
+            if (partitions == 1) {
+                result = normalizePartition(since, retryIds, 0, 1, lookup, mappings);
+            } else {
+                result = normalizePartitions(since, retryIds, partitions, lookup, mappings);
             }
+            log.info("Category mapping changed for {} products", mappings.appended());
         }
 
-        NormalizeResult result = new NormalizeResult(processed, created, updated, skippedExcluded, skippedUnmapped, failed);
         log.info("Normalization completed: {}", result);
-
         return result;
     }
 
+    private NormalizeResult normalizePartitions(Timestamp since, String[] retryIds, int partitions,
+                                                ProductLookup lookup, CategoryMappingLogAppender mappings) {
+        log.info("Normalizing in {} parallel partitions", partitions);
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(partitions, r -> {
+            Thread t = new Thread(r, "normalize-worker-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            List<Future<NormalizeResult>> futures = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) {
+                int partition = p;
+                futures.add(workers.submit(
+                        () -> normalizePartition(since, retryIds, partition, partitions, lookup, mappings)));
+            }
+
+            NormalizeResult result = new NormalizeResult(0, 0, 0, 0, 0, 0, 0, List.of());
+            for (Future<NormalizeResult> future : futures) {
+                result = result.plus(future.get());
+            }
+            return result;
+
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re
+                    ? re
+                    : new RuntimeException("Normalization partition failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for normalization partitions", e);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
     /**
-     * Načíta produkty zo staging tabuľky.
+     * Streamuje staging cez kurzor (read-only transakcia, fetch size = chunk) a zapisuje
+     * po chunkoch v samostatných transakciách. Každý produkt beží v savepointe, takže
+     * chyba jedného produktu nezruší ostatné v chunku.
+     *
+     * @param retryIds feed_id chybných produktov predchádzajúceho behu - spracujú sa aj bez zmeny
+     * @param partition partícia 0..partitions-1 podľa hashtext(feed_id)
      */
-    private List<StagingProduct> loadStagingProducts() {
-        String sql = """
-            SELECT feed_id, sku, title, description,
-                   price_purchase, price_retail, weight_grams,
-                   categories, images, attributes,
-                   availability
-            FROM staging.humed_raw
-            WHERE is_excluded = false
-            ORDER BY feed_id
-            """;
+    private NormalizeResult normalizePartition(Timestamp since, String[] retryIds, int partition, int partitions,
+                                               ProductLookup lookup, CategoryMappingLogAppender mappings) {
+        int chunkSize = config.getChunkSize();
+        NormalizeCounters counters = new NormalizeCounters(
+                partitions > 1 ? " in partition " + (partition + 1) + "/" + partitions : "");
+        List<StagingProduct> chunk = new ArrayList<>(chunkSize);
+        StagingProductRowMapper rowMapper = new StagingProductRowMapper();
+
+        StringBuilder filter = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        if (since != null && retryIds.length > 0) {
+            filter.append("AND (updated_at > ? OR feed_id = ANY(?::text[]))");
+            params.add(since);
+            params.add(retryIds);
+        } else if (since != null) {
+            filter.append("AND updated_at > ?");
+            params.add(since);
+        }
+        if (partitions > 1) {
+            filter.append(" AND mod(hashtext(feed_id) & 2147483647, ?) = ?");
+            params.add(partitions);
+            params.add(partition);
+        }
 
-        return jdbc.query(sql, new StagingProductRowMapper());
+        readTx.executeWithoutResult(status -> jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(STAGING_PRODUCTS_SQL.formatted(filter));
+            ps.setFetchSize(chunkSize);
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            chunk.add(rowMapper.mapRow(rs, counters.processed));
+            if (chunk.size() >= chunkSize) {
+                writeChunk(chunk, counters, lookup, mappings);
+            }
+        }));
+        writeChunk(chunk, counters, lookup, mappings);
+
+        return counters.toResult();
     }
 
     /**
-     * Extrahuje cestu najhlbšej kategórie z JSON.
-     * Kategórie sú uložené ako: [{"id":"137","name":"Main"},{"id":"214","name":"Main > Sub"}]
-     * Vráti názov poslednej (najhlbšej) kategórie.
+     * Zapíše chunk v novej transakcii (REQUIRES_NEW - kurzor drží vlastné spojenie).
      */
-    private String extractDeepestCategoryPath(String categoriesJson) {
-        if (categoriesJson == null || categoriesJson.isBlank()) {
-            return null;
+    private void writeChunk(List<StagingProduct> chunk, NormalizeCounters counters, ProductLookup lookup,
+                            CategoryMappingLogAppender mappings) {
+        if (chunk.isEmpty()) {
+            return;
         }
+        chunkTx.executeWithoutResult(status -> {
+            List<ProductUpdate> pendingUpdates = new ArrayList<>(chunk.size());
+            for (StagingProduct staging : chunk) {
+                counters.processed++;
+                try {
+                    counters.add(productTx.execute(s -> normalizeProduct(staging, lookup, mappings, pendingUpdates)));
+                } catch (Exception e) {
+                    log.error("Failed to normalize product {}: {}", staging.feedId(), e.getMessage());
+                    counters.fail(staging.feedId());
+                }
+            }
+            flushUpdates(pendingUpdates, counters, lookup);
+        });
+        chunk.clear();
+        log.info("Processed {} products{}", counters.processed, counters.label);
+    }
 
-        try {
-            List<Map<String, String>> categories = objectMapper.readValue(
-                    categoriesJson,
-                    new TypeReference<>() {}
-            );
+    /**
+     * Normalizuje jeden produkt (v savepointe chunk transakcie).
+     */
+    private Outcome normalizeProduct(StagingProduct staging, ProductLookup lookup,
+                                     CategoryMappingLogAppender mappings, List<ProductUpdate> pendingUpdates) {
+        // Najhlbšia kategória (staging.deepest_category_path)
+        String categoryPath = staging.deepestCategoryPath();
+
+        // Aplikuj category matching
+        CategoryMatcher.MatchResult matchResult = categoryMatcher.match(
+                SOURCE_HUMED,
+                categoryPath,
+                staging.title()
+        );
+
+        // Zaloguj zmenu mapovania (asynchrónne, mimo transakcie)
+        mappings.append(
+                staging.feedId(),
+                staging.sku(),
+                categoryPath,
+                matchResult
+        );
+
+        // Preskočenie excluded
+        if (matchResult.isExcluded()) {
+            markAsExcluded(staging.feedId(), "Category excluded");
+            return Outcome.EXCLUDED;
+        }
+
+        // Preskočenie unmapped
+        if (!matchResult.isMatched()) {
+            log.debug("Unmapped product: {} - {}", staging.sku(), categoryPath);
+            return Outcome.UNMAPPED;
+        }
+
+        // Upsert do catalog
+        return upsertProduct(staging, matchResult.targetCategoryId(), lookup, pendingUpdates);
+    }
+
+    /**
+     * Výsledok normalizácie jedného produktu.
+     */
+    private enum Outcome {
+        CREATED, UPDATED, UNCHANGED, EXCLUDED, UNMAPPED,
+        /** UPDATE existujúceho produktu čaká na dávku - započíta sa vo flushUpdates. */
+        BATCHED
+    }
+
+    /**
+     * Priebežné počítadlá behu alebo partície (plní ich jedno vlákno).
+     */
+    private static final class NormalizeCounters {
+        final String label;
+        int processed;
+        int created;
+        int updated;
+        int unchanged;
+        int skippedExcluded;
+        int skippedUnmapped;
+        int failed;
+        final List<String> failedSourceIds = new ArrayList<>();
+
+        NormalizeCounters(String label) {
+            this.label = label;
+        }
 
-            if (categories.isEmpty()) {
-                return null;
+        void add(Outcome outcome) {
+            switch (outcome) {
+                case CREATED -> created++;
+                case UPDATED -> updated++;
+                case UNCHANGED -> unchanged++;
+                case EXCLUDED -> skippedExcluded++;
+                case UNMAPPED -> skippedUnmapped++;
+                case BATCHED -> {
+                }
             }
+        }
 
-            // Posledná kategória je najhlbšia
-            Map<String, String> deepest = categories.getLast();
-            return deepest.get("name");
+        void fail(String sourceId) {
+            failed++;
+            failedSourceIds.add(sourceId);
+        }
 
-        } catch (JsonProcessingException e) {
-            log.warn("Failed to parse categories JSON: {}", e.getMessage());
-            return null;
+        NormalizeResult toResult() {
+            return new NormalizeResult(processed, created, updated, unchanged, skippedExcluded, skippedUnmapped,
+                    failed, List.copyOf(failedSourceIds));
         }
     }
 
@@ -196,23 +416,20 @@ public class ProductNormalizer {
 
     /**
      * Upsert produktu do catalog.products a catalog.product_sources.
-     * 
-     * @return true ak bol vytvorený nový produkt, false ak aktualizovaný
+     * Existujúci produkt sa len zaradí do dávky UPDATE-ov chunku (flushUpdates).
+     *
+     * @return CREATED, UPDATED (nový zdroj k existujúcemu SKU), UNCHANGED alebo BATCHED
      */
-    private boolean upsertProduct(StagingProduct staging, Integer categoryId) {
+    private Outcome upsertProduct(StagingProduct staging, Integer categoryId,
+                                  ProductLookup lookup, List<ProductUpdate> pendingUpdates) {
         // Skontroluj či existuje v product_sources
-        Integer existingProductId = jdbc.query(
-                "SELECT product_id FROM catalog.product_sources WHERE source = ? AND source_id = ?",
-                rs -> rs.next() ? rs.getInt("product_id") : null,
-                SOURCE_HUMED,
-                staging.feedId()
-        );
+        Integer existingProductId = lookup.bySourceId().get(staging.feedId());
 
         // Vypočítaj maržu
         BigDecimal marginPercent = calculateMarginPercent(staging.pricePurchase(), staging.priceRetail());
 
-        // Parse attributes pre pack_quantity
-        Integer packQuantity = parsePackQuantity(staging.attributesJson());
+        // Balenie z atribútov (staging.pack_quantity)
+        Integer packQuantity = staging.packQuantity();
 
         // Konvertuj váhu na kg
         BigDecimal weightKg = staging.weightGrams() != null
@@ -223,30 +440,38 @@ public class ProductNormalizer {
 
         if (existingProductId == null) {
             // INSERT nový produkt
-            return insertNewProduct(staging, categoryId, marginPercent, packQuantity, weightKg, now);
-        } else {
-            // UPDATE existujúci produkt
-            updateExistingProduct(existingProductId, staging, categoryId, marginPercent, packQuantity, weightKg, now);
-            return false;
+            return insertNewProduct(staging, categoryId, marginPercent, packQuantity, weightKg, now, lookup)
+                    ? Outcome.CREATED
+                    : Outcome.UPDATED;
+        }
+
+        // Nezmenený obsah - bez UPDATE (updated_at ostáva časom skutočnej zmeny)
+        String contentHash = ProductContentHash.of(staging.title(), staging.description(), categoryId,
+                staging.pricePurchase(), staging.priceRetail(), marginPercent, weightKg, packQuantity,
+                staging.imagesJson(), staging.attributesJson(), mapAvailability(staging.availability()));
+        if (contentHash.equals(lookup.contentHashById().get(existingProductId))) {
+            return Outcome.UNCHANGED;
         }
+
+        // UPDATE existujúci produkt - dávkovo na konci chunku
+        pendingUpdates.add(new ProductUpdate(existingProductId, staging, categoryId,
+                marginPercent, packQuantity, weightKg, contentHash, now));
+        return Outcome.BATCHED;
     }
 
     private boolean insertNewProduct(StagingProduct staging, Integer categoryId,
                                      BigDecimal marginPercent, Integer packQuantity,
-                                     BigDecimal weightKg, Timestamp now) {
+                                     BigDecimal weightKg, Timestamp now, ProductLookup lookup) {
         // Generuj SKU (použijeme HUMED SKU)
         String catalogSku = staging.sku();
 
         // Skontroluj unikátnosť SKU
-        Integer existingBySku = jdbc.query(
-                "SELECT id FROM catalog.products WHERE sku = ?",
-                rs -> rs.next() ? rs.getInt("id") : null,
-                catalogSku
-        );
+        Integer existingBySku = lookup.bySku().get(catalogSku);
 
         if (existingBySku != null) {
             // SKU existuje - pridaj len nový source
             insertProductSource(existingBySku, staging, now);
+            lookup.bySourceId().put(staging.feedId(), existingBySku);
             return false;
         }
 
@@ -257,12 +482,17 @@ public class ProductNormalizer {
                 price_cost, price_b2b, margin_percent,
                 weight_kg, pack_quantity,
                 images, attributes,
-                stock_status, is_active,
+                stock_status, is_active, content_hash,
                 created_at, updated_at
-            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?::jsonb, ?::jsonb, ?, ?, ?, ?)
+            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?::jsonb, ?::jsonb, ?, ?, ?, ?, ?)
             RETURNING id
             """;
 
+        String stockStatus = mapAvailability(staging.availability());
+        String contentHash = ProductContentHash.of(staging.title(), staging.description(), categoryId,
+                staging.pricePurchase(), staging.priceRetail(), marginPercent, weightKg, packQuantity,
+                staging.imagesJson(), staging.attributesJson(), stockStatus);
+
         Integer productId = jdbc.queryForObject(
                 insertProduct,
                 Integer.class,
@@ -277,8 +507,9 @@ public class ProductNormalizer {
                 packQuantity,
                 staging.imagesJson(),
                 staging.attributesJson(),
-                mapAvailability(staging.availability()),
+                stockStatus,
                 true,
+                contentHash,
                 now,
                 now
         );
@@ -286,60 +517,134 @@ public class ProductNormalizer {
         // Insert do product_sources
         insertProductSource(productId, staging, now);
 
+        lookup.bySku().put(catalogSku, productId);
+        lookup.bySourceId().put(staging.feedId(), productId);
+        lookup.contentHashById().put(productId, contentHash);
         return true;
     }
 
-    private void updateExistingProduct(Integer productId, StagingProduct staging, Integer categoryId,
-                                       BigDecimal marginPercent, Integer packQuantity,
-                                       BigDecimal weightKg, Timestamp now) {
-        String updateProduct = """
-            UPDATE catalog.products SET
-                name = ?,
-                description = ?,
-                category_id = ?,
-                price_cost = ?,
-                price_b2b = ?,
-                margin_percent = ?,
-                weight_kg = ?,
-                pack_quantity = ?,
-                images = ?::jsonb,
-                attributes = ?::jsonb,
-                stock_status = ?,
-                updated_at = ?
-            WHERE id = ?
-            """;
+    /**
+     * Odošle UPDATE-y existujúcich produktov a ich zdrojov dvoma batchUpdate príkazmi
+     * v savepointe. Ak dávka zlyhá, zopakuje ich po jednom, aby chybný produkt
+     * nezhodil ostatné.
+     */
+    private void flushUpdates(List<ProductUpdate> pendingUpdates, NormalizeCounters counters,
+                              ProductLookup lookup) {
+        if (pendingUpdates.isEmpty()) {
+            return;
+        }
 
-        jdbc.update(
-                updateProduct,
-                staging.title(),
-                staging.description(),
-                categoryId,
-                staging.pricePurchase(),
-                staging.priceRetail(),
-                marginPercent,
-                weightKg,
-                packQuantity,
-                staging.imagesJson(),
-                staging.attributesJson(),
-                mapAvailability(staging.availability()),
-                now,
-                productId
-        );
+        try {
+            int[] rows = productTx.execute(status -> {
+                int[] productRows = jdbc.batchUpdate(UPDATE_PRODUCT_SQL,
+                        pendingUpdates.stream().map(ProductUpdate::productArgs).toList());
+                jdbc.batchUpdate(UPDATE_PRODUCT_SOURCE_SQL,
+                        pendingUpdates.stream().map(ProductUpdate::sourceArgs).toList());
+                return productRows;
+            });
+            for (int i = 0; i < pendingUpdates.size(); i++) {
+                ProductUpdate update = pendingUpdates.get(i);
+                // 0 riadkov = hash v DB sa už zhodoval (iný zdroj toho istého produktu v chunku)
+                if (rows[i] == 0) {
+                    counters.unchanged++;
+                } else {
+                    counters.updated++;
+                }
+                lookup.contentHashById().put(update.productId(), update.contentHash());
+            }
 
-        // Update product_sources
-        jdbc.update("""
-            UPDATE catalog.product_sources SET
-                source_price_purchase = ?,
-                source_price_retail = ?,
-                last_seen_at = ?
-            WHERE product_id = ? AND source = ?
-            """,
-                staging.pricePurchase(),
-                staging.priceRetail(),
-                now,
-                productId,
-                SOURCE_HUMED
-        );
+        } catch (DataAccessException e) {
+            log.warn("Batch update of {} products failed, falling back to per-row updates: {}",
+                    pendingUpdates.size(), e.getMessage());
+            for (ProductUpdate update : pendingUpdates) {
+                try {
+                    int rows = productTx.execute(status -> {
+                        int productRows = jdbc.update(UPDATE_PRODUCT_SQL, update.productArgs());
+                        jdbc.update(UPDATE_PRODUCT_SOURCE_SQL, update.sourceArgs());
+                        return productRows;
+                    });
+                    if (rows == 0) {
+                        counters.unchanged++;
+                    } else {
+                        counters.updated++;
+                    }
+                    lookup.contentHashById().put(update.productId(), update.contentHash());
+                } catch (Exception ex) {
+                    log.error("Failed to normalize product {}: {}", update.staging().feedId(), ex.getMessage());
+                    counters.fail(update.staging().feedId());
+                }
+            }
+        }
+        pendingUpdates.clear();
+    }
+
+    /**
+     * Načíta mapy (humed source_id -> product_id), (sku -> product_id) a (product_id -> content_hash) raz na beh.
+     * Nové produkty a zdroje sa do nich dopĺňajú priebežne (zdieľajú ich paralelné partície).
+     */
+    private ProductLookup loadProductLookup() {
+        Map<String, Integer> bySourceId = new ConcurrentHashMap<>();
+        jdbc.query("SELECT source_id, product_id FROM catalog.product_sources WHERE source = ?",
+                (RowCallbackHandler) rs -> bySourceId.put(rs.getString(1), rs.getInt(2)),
+                SOURCE_HUMED);
+
+        Map<String, Integer> bySku = new ConcurrentHashMap<>();
+        Map<Integer, String> contentHashById = new ConcurrentHashMap<>();
+        jdbc.query("SELECT sku, id, content_hash FROM catalog.products", (RowCallbackHandler) rs -> {
+            bySku.put(rs.getString(1), rs.getInt(2));
+            String contentHash = rs.getString(3);
+            if (contentHash != null) {
+                contentHashById.put(rs.getInt(2), contentHash);
+            }
+        });
+
+        log.info("Loaded {} product sources and {} product SKUs", bySourceId.size(), bySku.size());
+        return new ProductLookup(bySourceId, bySku, contentHashById);
+    }
+
+    /**
+     * Existujúce produkty podľa HUMED source_id a podľa SKU, content_hash podľa product_id.
+     */
+    private record ProductLookup(Map<String, Integer> bySourceId, Map<String, Integer> bySku,
+                                 Map<Integer, String> contentHashById) {
+    }
+
+    /**
+     * UPDATE existujúceho produktu čakajúci na dávku chunku.
+     */
+    private record ProductUpdate(Integer productId, StagingProduct staging, Integer categoryId,
+                                 BigDecimal marginPercent, Integer packQuantity,
+                                 BigDecimal weightKg, String contentHash, Timestamp now) {
+
+        Object[] productArgs() {
+            return new Object[]{
+                    staging.title(),
+                    staging.description(),
+                    categoryId,
+                    staging.pricePurchase(),
+                    staging.priceRetail(),
+                    marginPercent,
+                    weightKg,
+                    packQuantity,
+                    staging.imagesJson(),
+                    staging.attributesJson(),
+                    mapAvailability(staging.availability()),
+                    contentHash,
+                    now,
+                    productId,
+                    contentHash
+            };
+        }
+
+        Object[] sourceArgs() {
+            return new Object[]{
+                    staging.pricePurchase(),
+                    staging.priceRetail(),
+                    now,
+                    productId,
+                    SOURCE_HUMED
+            };
+        }
     }
 
     private void insertProductSource(Integer productId, StagingProduct staging, Timestamp now) {
@@ -383,29 +688,10 @@ public class ProductNormalizer {
                 .setScale(2, RoundingMode.HALF_UP);
     }
 
-    /**
-     * Parsuje pack quantity z attributes JSON.
-     */
-    private Integer parsePackQuantity(String attributesJson) {
-        if (attributesJson == null || attributesJson.isBlank()) {
-            return null;
-        }
-        try {
-            Map<String, String> attrs = objectMapper.readValue(attributesJson, new TypeReference<>() {});
-            String balenie = attrs.get("Balenie");
-            if (balenie != null) {
-                return Integer.parseInt(balenie);
-            }
-        } catch (Exception e) {
-            log.debug("Failed to parse pack quantity: {}", e.getMessage());
-        }
-        return null;
-    }
-
     /**
      * Mapuje availability z feedu na stock_status.
      */
-    private String mapAvailability(String feedAvailability) {
+    private static String mapAvailability(String feedAvailability) {
         if (feedAvailability == null) {
             return "instock";
         }
@@ -428,7 +714,8 @@ public class ProductNormalizer {
             BigDecimal pricePurchase,
             BigDecimal priceRetail,
             Integer weightGrams,
-            String categoriesJson,
+            String deepestCategoryPath,
+            Integer packQuantity,
             String imagesJson,
             String attributesJson,
             String availability
@@ -448,7 +735,8 @@ public class ProductNormalizer {
                     rs.getBigDecimal("price_purchase"),
                     rs.getBigDecimal("price_retail"),
                     rs.getObject("weight_grams", Integer.class),
-                    rs.getString("categories"),
+                    rs.getString("deepest_category_path"),
+                    rs.getObject("pack_quantity", Integer.class),
                     rs.getString("images"),
                     rs.getString("attributes"),
                     rs.getString("availability")
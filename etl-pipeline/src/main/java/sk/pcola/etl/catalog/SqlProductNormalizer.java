@@ -0,0 +1,332 @@
+package sk.pcola.etl.catalog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Set-based normalizácia HUMED produktov zo staging.humed_raw do catalog.products.
+ *
+ * Rovnaký výsledok ako {@link ProductNormalizer} v Jave, ale celé staging naraz:
+ * 1. Dočasná tabuľka humed_normalize - najhlbšia kategória, výsledok mapovania
+ *    (exclusion / exact / pattern pre každú rôznu kategóriu raz, title po produktoch),
+ *    marža, váha v kg, pack_quantity, stock_status a existujúci product_sources záznam
+ * 2. category_mapping_log pre produkty so zmeneným mapovaním
+ * 3. Vylúčené produkty -> staging.is_excluded
+ * 4. UPDATE existujúcich produktov so zmeneným content_hash a ich HUMED zdrojov
+ * 5. INSERT nových produktov (ON CONFLICT na SKU - existujúci produkt dostane len nový zdroj)
+ * 6. INSERT product_sources pre nové zdroje
+ *
+ * Beží v jednej transakcii - chyba ktoréhokoľvek príkazu zruší celý beh,
+ * preto je failed vo výsledku vždy 0.
+ */
+@Service
+public class SqlProductNormalizer {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlProductNormalizer.class);
+
+    private static final String SOURCE_HUMED = "humed";
+
+    /** Produkty s nájdeným pravidlom (MatchResult.isMatched). */
+    private static final String MATCHED = "match_type IN ('exact', 'pattern', 'title')";
+
+    private static final String CREATE_WORK_TABLE = """
+        CREATE TEMP TABLE humed_normalize (
+            feed_id             VARCHAR(20) NOT NULL,
+            sku                 VARCHAR(50) NOT NULL,
+            title               TEXT,
+            description         TEXT,
+            price_purchase      NUMERIC,
+            price_retail        NUMERIC,
+            images              JSONB,
+            attributes          JSONB,
+            category_path       TEXT,
+            rule_id             INTEGER,
+            target_category_id  INTEGER,
+            match_type          VARCHAR(20) NOT NULL,
+            margin_percent      NUMERIC,
+            weight_kg           NUMERIC,
+            pack_quantity       INTEGER,
+            stock_status        VARCHAR(20),
+            existing_product_id INTEGER
+        ) ON COMMIT DROP
+        """;
+
+    /**
+     * Mapovanie v poradí CategoryMatcher.match: exclusion, exact, pattern (raz pre každú
+     * rôznu kategóriu), potom title pattern po produktoch, inak unmapped.
+     * Výpočty zodpovedajú calculateMarginPercent a mapAvailability.
+     * %1$s = filter zmenených riadkov pri inkrementálnom behu.
+     */
+    private static final String FILL_WORK_TABLE = """
+        INSERT INTO humed_normalize
+        WITH src AS (
+            SELECT feed_id, sku, title, description,
+                   price_purchase, price_retail, weight_grams,
+                   images, attributes, availability,
+                   deepest_category_path AS category_path, pack_quantity
+            FROM staging.humed_raw
+            WHERE is_excluded = false
+              AND missing_since IS NULL
+              %1$s
+        ),
+        path_match AS (
+            SELECT p.category_path, m.rule_id, m.target_category_id, m.match_type
+            FROM (SELECT DISTINCT category_path FROM src WHERE category_path IS NOT NULL) p
+            CROSS JOIN LATERAL (
+                SELECT candidates.*
+                FROM (
+                    SELECT NULL::integer AS rule_id, NULL::integer AS target_category_id,
+                           'excluded' AS match_type, 0 AS step
+                    WHERE EXISTS (
+                        SELECT 1 FROM catalog.category_exclusions e
+                        WHERE e.source = ?
+                          AND e.is_active = true
+                          AND p.category_path LIKE e.source_category_pattern)
+                    UNION ALL
+                    (SELECT r.id, r.target_category_id, 'exact', 1
+                     FROM catalog.category_rules r
+                     WHERE r.source = ?
+                       AND r.source_category_exact = p.category_path
+                       AND r.is_active = true
+                     ORDER BY r.priority, r.id
+                     LIMIT 1)
+                    UNION ALL
+                    (SELECT r.id, r.target_category_id, 'pattern', 2
+                     FROM catalog.category_rules r
+                     WHERE r.source = ?
+                       AND r.source_category_pattern IS NOT NULL
+                       AND p.category_path LIKE r.source_category_pattern
+                       AND r.is_active = true
+                     ORDER BY r.priority, r.id
+                     LIMIT 1)
+                ) candidates
+                ORDER BY candidates.step
+                LIMIT 1
+            ) m
+        )
+        SELECT src.feed_id, src.sku, src.title, src.description,
+               src.price_purchase, src.price_retail,
+               src.images, src.attributes, src.category_path,
+               COALESCE(pm.rule_id, t.rule_id),
+               COALESCE(pm.target_category_id, t.target_category_id),
+               COALESCE(pm.match_type, CASE WHEN t.rule_id IS NOT NULL THEN 'title' ELSE 'unmapped' END),
+               round(round((src.price_retail - src.price_purchase) / NULLIF(src.price_retail, 0), 4) * 100, 2),
+               round(src.weight_grams / 1000.0, 4),
+               src.pack_quantity,
+               CASE lower(src.availability)
+                   WHEN 'out of stock' THEN 'outofstock'
+                   WHEN 'out_of_stock' THEN 'outofstock'
+                   WHEN 'preorder' THEN 'onbackorder'
+                   WHEN 'pre-order' THEN 'onbackorder'
+                   ELSE 'instock'
+               END,
+               ps.product_id
+        FROM src
+        LEFT JOIN path_match pm ON pm.category_path = src.category_path
+        LEFT JOIN LATERAL (
+            SELECT r.id AS rule_id, r.target_category_id
+            FROM catalog.category_rules r
+            WHERE pm.match_type IS NULL
+              AND r.source = ?
+              AND r.title_pattern IS NOT NULL
+              AND src.title ILIKE r.title_pattern
+              AND r.is_active = true
+            ORDER BY r.priority, r.id
+            LIMIT 1
+        ) t ON true
+        LEFT JOIN catalog.product_sources ps ON ps.source = ? AND ps.source_id = src.feed_id
+        """;
+
+    /**
+     * Len produkty, ktorých mapovanie sa líši od ich posledného záznamu v logu.
+     */
+    private static final String INSERT_MAPPING_LOG = """
+        INSERT INTO catalog.category_mapping_log
+        (source, source_product_id, source_sku, source_category_raw,
+         matched_rule_id, target_category_id, match_type, mapped_at)
+        SELECT ?, n.feed_id, n.sku, n.category_path, n.rule_id, n.target_category_id, n.match_type, NOW()
+        FROM humed_normalize n
+        LEFT JOIN LATERAL (
+            SELECT m.matched_rule_id, m.target_category_id, m.match_type
+            FROM catalog.category_mapping_log m
+            WHERE m.source = ?
+              AND m.source_product_id = n.feed_id
+            ORDER BY m.id DESC
+            LIMIT 1
+        ) last ON true
+        WHERE (last.matched_rule_id, last.target_category_id, last.match_type)
+              IS DISTINCT FROM (n.rule_id, n.target_category_id, n.match_type)
+        """;
+
+    private static final String MARK_EXCLUDED = """
+        UPDATE staging.humed_raw s SET
+            is_excluded = true,
+            exclusion_reason = 'Category excluded'
+        FROM humed_normalize n
+        WHERE n.match_type = 'excluded'
+          AND s.feed_id = n.feed_id
+        """;
+
+    /** Hash normalizovaného riadku humed_normalize n (rovnaký ako ProductContentHash v Jave). */
+    private static final String CONTENT_HASH = """
+        catalog.product_content_hash(n.title, n.description, n.target_category_id,
+            n.price_purchase, n.price_retail, n.margin_percent, n.weight_kg, n.pack_quantity,
+            n.images, n.attributes, n.stock_status)""";
+
+    /**
+     * Pri viacerých zdrojoch jedného produktu vyhrá posledný podľa feed_id (ako v Java engine).
+     * Produkty so zhodným content_hash sa nemenia, ich zdroj tiež nie. Vráti počet nezmenených.
+     */
+    private static final String UPDATE_EXISTING = """
+        WITH latest AS (
+            SELECT DISTINCT ON (existing_product_id) *
+            FROM humed_normalize
+            WHERE existing_product_id IS NOT NULL
+              AND %1$s
+            ORDER BY existing_product_id, feed_id DESC
+        ),
+        products AS (
+            UPDATE catalog.products p SET
+                name = n.title,
+                description = n.description,
+                category_id = n.target_category_id,
+                price_cost = n.price_purchase,
+                price_b2b = n.price_retail,
+                margin_percent = n.margin_percent,
+                weight_kg = n.weight_kg,
+                pack_quantity = n.pack_quantity,
+                images = n.images,
+                attributes = n.attributes,
+                stock_status = n.stock_status,
+                content_hash = %2$s,
+                updated_at = NOW()
+            FROM latest n
+            WHERE p.id = n.existing_product_id
+              AND p.content_hash IS DISTINCT FROM %2$s
+            RETURNING p.id
+        ),
+        sources AS (
+            UPDATE catalog.product_sources ps SET
+                source_price_purchase = n.price_purchase,
+                source_price_retail = n.price_retail,
+                last_seen_at = NOW()
+            FROM latest n
+            JOIN products changed ON changed.id = n.existing_product_id
+            WHERE ps.product_id = n.existing_product_id
+              AND ps.source = ?
+        )
+        SELECT COUNT(*)
+        FROM latest n
+        WHERE NOT EXISTS (SELECT 1 FROM products changed WHERE changed.id = n.existing_product_id)
+        """.formatted(MATCHED, CONTENT_HASH);
+
+    private static final String INSERT_NEW_PRODUCTS = """
+        INSERT INTO catalog.products (
+            sku, name, description, category_id,
+            price_cost, price_b2b, margin_percent,
+            weight_kg, pack_quantity,
+            images, attributes,
+            stock_status, is_active, content_hash,
+            created_at, updated_at
+        )
+        SELECT n.sku, n.title, n.description, n.target_category_id,
+               n.price_purchase, n.price_retail, n.margin_percent,
+               n.weight_kg, n.pack_quantity,
+               n.images, n.attributes,
+               n.stock_status, true, %2$s,
+               NOW(), NOW()
+        FROM humed_normalize n
+        WHERE n.existing_product_id IS NULL
+          AND %1$s
+        ORDER BY n.feed_id
+        ON CONFLICT (sku) DO NOTHING
+        """.formatted(MATCHED, CONTENT_HASH);
+
+    private static final String INSERT_NEW_SOURCES = """
+        INSERT INTO catalog.product_sources (
+            product_id, source, source_id, source_sku,
+            source_price_purchase, source_price_retail,
+            is_primary, priority, last_seen_at, is_active
+        )
+        SELECT p.id, ?, n.feed_id, n.sku,
+               n.price_purchase, n.price_retail,
+               true, 1, NOW(), true
+        FROM humed_normalize n
+        JOIN catalog.products p ON p.sku = n.sku
+        WHERE n.existing_product_id IS NULL
+          AND %1$s
+        ON CONFLICT (source, source_id) DO UPDATE SET
+            source_price_purchase = EXCLUDED.source_price_purchase,
+            source_price_retail = EXCLUDED.source_price_retail,
+            last_seen_at = EXCLUDED.last_seen_at
+        """.formatted(MATCHED);
+
+    private static final String COUNT_RESULTS = """
+        SELECT COUNT(*) AS processed,
+               COUNT(*) FILTER (WHERE match_type = 'excluded') AS excluded,
+               COUNT(*) FILTER (WHERE match_type = 'unmapped') AS unmapped,
+               COUNT(*) FILTER (WHERE %1$s) AS matched
+        FROM humed_normalize
+        """.formatted(MATCHED);
+
+    private final JdbcTemplate jdbc;
+
+    public SqlProductNormalizer(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Normalizuje HUMED produkty zo staging do catalog.
+     *
+     * @param since len staging riadky zmenené po tomto čase, null = všetky
+     * @param retryIds feed_id chybných produktov predchádzajúceho behu - spracujú sa aj bez zmeny
+     */
+    @Transactional
+    public ProductNormalizer.NormalizeResult normalizeHumed(Timestamp since, String[] retryIds) {
+        log.info("Starting set-based HUMED product normalization");
+
+        jdbc.execute(CREATE_WORK_TABLE);
+        if (since != null && retryIds.length > 0) {
+            jdbc.update(FILL_WORK_TABLE.formatted("AND (updated_at > ? OR feed_id = ANY(?::text[]))"),
+                    since, retryIds, SOURCE_HUMED, SOURCE_HUMED, SOURCE_HUMED, SOURCE_HUMED, SOURCE_HUMED);
+        } else if (since != null) {
+            jdbc.update(FILL_WORK_TABLE.formatted("AND updated_at > ?"),
+                    since, SOURCE_HUMED, SOURCE_HUMED, SOURCE_HUMED, SOURCE_HUMED, SOURCE_HUMED);
+        } else {
+            jdbc.update(FILL_WORK_TABLE.formatted(""),
+                    SOURCE_HUMED, SOURCE_HUMED, SOURCE_HUMED, SOURCE_HUMED, SOURCE_HUMED);
+        }
+        jdbc.execute("ANALYZE humed_normalize");
+
+        int logged = jdbc.update(INSERT_MAPPING_LOG, SOURCE_HUMED, SOURCE_HUMED);
+        int excluded = jdbc.update(MARK_EXCLUDED);
+        Integer unchanged = jdbc.queryForObject(UPDATE_EXISTING, Integer.class, SOURCE_HUMED);
+        int created = jdbc.update(INSERT_NEW_PRODUCTS);
+        int sourcesInserted = jdbc.update(INSERT_NEW_SOURCES, SOURCE_HUMED);
+        log.debug("Mapping log: {}, excluded: {}, products created: {}, sources inserted: {}",
+                logged, excluded, created, sourcesInserted);
+
+        ProductNormalizer.NormalizeResult result = jdbc.queryForObject(COUNT_RESULTS, (rs, rowNum) -> {
+            int matched = rs.getInt("matched");
+            return new ProductNormalizer.NormalizeResult(
+                    rs.getInt("processed"),
+                    created,
+                    matched - created - unchanged,
+                    unchanged,
+                    rs.getInt("excluded"),
+                    rs.getInt("unmapped"),
+                    0,
+                    List.of()
+            );
+        });
+
+        log.info("Normalization completed: {}", result);
+        return result;
+    }
+}
@@ -0,0 +1,153 @@
+package sk.pcola.etl.catalog;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Vyhľadanie prvého zhodného title_pattern (ILIKE) z usporiadaného zoznamu vzorov.
+ *
+ * Vzory {@code %text%} sú v jednom Aho-Corasick automate - jeden prechod názvom produktu
+ * nájde všetky obsiahnuté texty naraz. Ostatné vzory sa skúšajú regexom
+ * ({@link LikePattern#matches}), len kým môžu predbehnúť najlepší nález automatu.
+ *
+ * Veľkosť písmen sa zjednotí po znakoch ako pri ILIKE, diakritika sa rozlišuje
+ * ("cistic" nenájde "Čistič").
+ */
+final class TitlePatternMatcher {
+
+    private static final int ROOT = 0;
+    private static final int NONE = Integer.MAX_VALUE;
+
+    /** Prechody automatu: uzol -> (znak -> uzol). */
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    /** Failure link uzla. */
+    private final List<Integer> failures = new ArrayList<>();
+    /** Najnižší index vzoru končiaceho v uzle alebo v jeho failure reťazci, inak NONE. */
+    private final List<Integer> best = new ArrayList<>();
+
+    /** Indexy vzorov, ktoré nie sú podreťazec - vzostupne. */
+    private final List<Integer> regexIndexes = new ArrayList<>();
+    private final List<LikePattern> patterns;
+
+    /**
+     * @param patterns ILIKE vzory v poradí priority (index 0 = najvyššia)
+     */
+    TitlePatternMatcher(List<LikePattern> patterns) {
+        this.patterns = List.copyOf(patterns);
+        addNode();
+
+        for (int i = 0; i < this.patterns.size(); i++) {
+            String substring = this.patterns.get(i).substring();
+            if (substring != null) {
+                addSubstring(fold(substring), i);
+            } else {
+                regexIndexes.add(i);
+            }
+        }
+        buildFailureLinks();
+    }
+
+    /**
+     * @return index prvého (najprioritnejšieho) zhodného vzoru, -1 ak žiadny
+     */
+    int firstMatch(String title) {
+        if (title == null) {
+            return -1;
+        }
+
+        int found = scan(title);
+        for (int index : regexIndexes) {
+            if (index >= found) {
+                break;
+            }
+            if (patterns.get(index).matches(title)) {
+                found = index;
+                break;
+            }
+        }
+        return found == NONE ? -1 : found;
+    }
+
+    /**
+     * Jeden prechod automatom - najnižší index obsiahnutého podreťazca.
+     */
+    private int scan(String title) {
+        int found = NONE;
+        int state = ROOT;
+        for (int i = 0; i < title.length() && found > 0; i++) {
+            char c = fold(title.charAt(i));
+            Integer next;
+            while ((next = transitions.get(state).get(c)) == null && state != ROOT) {
+                state = failures.get(state);
+            }
+            state = next != null ? next : ROOT;
+            found = Math.min(found, best.get(state));
+        }
+        return found;
+    }
+
+    private void addSubstring(String substring, int index) {
+        int state = ROOT;
+        for (int i = 0; i < substring.length(); i++) {
+            Integer next = transitions.get(state).get(substring.charAt(i));
+            if (next == null) {
+                next = addNode();
+                transitions.get(state).put(substring.charAt(i), next);
+            }
+            state = next;
+        }
+        best.set(state, Math.min(best.get(state), index));
+    }
+
+    /**
+     * BFS od koreňa - failure link uzla je najdlhší vlastný sufix, ktorý je v automate.
+     */
+    private void buildFailureLinks() {
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : transitions.get(ROOT).values()) {
+            failures.set(child, ROOT);
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> edge : transitions.get(state).entrySet()) {
+                int child = edge.getValue();
+                int failure = failures.get(state);
+                Integer target;
+                while ((target = transitions.get(failure).get(edge.getKey())) == null && failure != ROOT) {
+                    failure = failures.get(failure);
+                }
+                int link = target != null && target != child ? target : ROOT;
+                failures.set(child, link);
+                best.set(child, Math.min(best.get(child), best.get(link)));
+                queue.add(child);
+            }
+        }
+    }
+
+    private int addNode() {
+        transitions.add(new HashMap<>());
+        failures.add(ROOT);
+        best.add(NONE);
+        return transitions.size() - 1;
+    }
+
+    private static String fold(String text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            folded.append(fold(text.charAt(i)));
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Znak bez ohľadu na veľkosť (ako Pattern.CASE_INSENSITIVE | UNICODE_CASE), diakritika ostáva.
+     */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -0,0 +1,173 @@
+package sk.pcola.etl.common.util;
+
+/**
+ * Streamovaný MurmurHash3 x64 128-bit (seed 0).
+ * Nekryptografický hash pre detekciu zmien - rádovo rýchlejší ako SHA-256.
+ *
+ * Výstup {@link #finishHex()} je h1 a h2 ako 32 hex znakov (h1 prvé).
+ * Inštancia nie je thread-safe, po {@link #reset()} sa dá použiť znova.
+ */
+public final class Murmur3Hash128 {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+    private long h2;
+    private long length;
+
+    private final byte[] tail = new byte[16];
+    private int tailLength;
+
+    public Murmur3Hash128() {
+        reset();
+    }
+
+    public void reset() {
+        h1 = 0;
+        h2 = 0;
+        length = 0;
+        tailLength = 0;
+    }
+
+    public void update(byte b) {
+        tail[tailLength++] = b;
+        length++;
+        if (tailLength == 16) {
+            mixBlock(getLong(tail, 0), getLong(tail, 8));
+            tailLength = 0;
+        }
+    }
+
+    public void update(byte[] data, int off, int len) {
+        length += len;
+        int i = off;
+        int end = off + len;
+
+        // Doplň rozpracovaný blok
+        if (tailLength > 0) {
+            while (tailLength < 16 && i < end) {
+                tail[tailLength++] = data[i++];
+            }
+            if (tailLength < 16) {
+                return;
+            }
+            mixBlock(getLong(tail, 0), getLong(tail, 8));
+            tailLength = 0;
+        }
+
+        for (; i + 16 <= end; i += 16) {
+            mixBlock(getLong(data, i), getLong(data, i + 8));
+        }
+
+        while (i < end) {
+            tail[tailLength++] = data[i++];
+        }
+    }
+
+    public void update(byte[] data) {
+        update(data, 0, data.length);
+    }
+
+    /**
+     * Dokončí hash a vráti ho ako 32 hex znakov. Stav sa potom resetuje.
+     */
+    public String finishHex() {
+        finish();
+        String hex = String.format("%016x%016x", h1, h2);
+        reset();
+        return hex;
+    }
+
+    /**
+     * Dokončí hash a vráti prvých 64 bitov (h1). Stav sa potom resetuje.
+     */
+    public long finishLong() {
+        finish();
+        long result = h1;
+        reset();
+        return result;
+    }
+
+    private void finish() {
+        long k1 = 0;
+        long k2 = 0;
+        switch (tailLength) {
+            case 15: k2 ^= (long) (tail[14] & 0xff) << 48;
+            case 14: k2 ^= (long) (tail[13] & 0xff) << 40;
+            case 13: k2 ^= (long) (tail[12] & 0xff) << 32;
+            case 12: k2 ^= (long) (tail[11] & 0xff) << 24;
+            case 11: k2 ^= (long) (tail[10] & 0xff) << 16;
+            case 10: k2 ^= (long) (tail[9] & 0xff) << 8;
+            case 9:
+                k2 ^= tail[8] & 0xff;
+                k2 *= C2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= C1;
+                h2 ^= k2;
+            case 8: k1 ^= (long) (tail[7] & 0xff) << 56;
+            case 7: k1 ^= (long) (tail[6] & 0xff) << 48;
+            case 6: k1 ^= (long) (tail[5] & 0xff) << 40;
+            case 5: k1 ^= (long) (tail[4] & 0xff) << 32;
+            case 4: k1 ^= (long) (tail[3] & 0xff) << 24;
+            case 3: k1 ^= (long) (tail[2] & 0xff) << 16;
+            case 2: k1 ^= (long) (tail[1] & 0xff) << 8;
+            case 1:
+                k1 ^= tail[0] & 0xff;
+                k1 *= C1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= C2;
+                h1 ^= k1;
+            default:
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+    }
+
+    private void mixBlock(long k1, long k2) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        h1 ^= k1;
+
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        h2 ^= k2;
+
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLong(byte[] b, int i) {
+        return (b[i] & 0xffL)
+                | (b[i + 1] & 0xffL) << 8
+                | (b[i + 2] & 0xffL) << 16
+                | (b[i + 3] & 0xffL) << 24
+                | (b[i + 4] & 0xffL) << 32
+                | (b[i + 5] & 0xffL) << 40
+                | (b[i + 6] & 0xffL) << 48
+                | (b[i + 7] & 0xffL) << 56;
+    }
+}
@@ -2,6 +2,7 @@ package sk.pcola.etl.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import sk.pcola.etl.staging.humed.HumedProductEncoder;
 
 @Component
 @ConfigurationProperties(prefix = "etl.humed")
@@ -11,6 +12,58 @@ public class HumedConfig {
     private String feedPath;
     private boolean enabled = true;
 
+    /**
+     * Sťahovanie, zápis na disk, checksum a parsovanie v jednom prechode cez HTTP stream.
+     * Checksum je známy až po parsovaní - bez preskočenia nezmeneného feedu, obnovy
+     * z checkpointu a paralelného parsovania.
+     */
+    private boolean streamingDownload = false;
+
+    /** Počet produktov v jednej dávke pre upsert do staging. */
+    private int batchSize = 100;
+
+    /** Set-based upsert celej dávky jedným príkazom namiesto SELECT + INSERT/UPDATE po riadkoch. */
+    private boolean bulkUpsert = true;
+
+    /** Načítanie cez COPY do dočasnej tabuľky (plný reload). Pri prázdnom staging sa použije vždy. */
+    private boolean copyLoad = false;
+
+    /** Pred syncom načítať feed_id -> checksum do pamäte a nezmenené produkty neposielať do DB. */
+    private boolean checksumIndex = true;
+
+    /** Checkpoint do sync logu po každých N zapísaných produktoch. 0 = bez checkpointov a obnovy. */
+    private int checkpointInterval = 5000;
+
+    /** Počet writer vlákien. 0 = parsovanie aj zápis na jednom vlákne. */
+    private int writerThreads = 0;
+
+    /** Kapacita fronty dávok medzi parserom a writermi (backpressure). */
+    private int queueCapacity = 4;
+
+    /** Počet vlákien pre paralelné parsovanie súboru feedu po shardoch. 0/1 = sekvenčne. */
+    private int parseParallelism = 0;
+
+    /** Pri paralelnom parsovaní zachovať poradie produktov z feedu. */
+    private boolean parseOrdered = true;
+
+    /** StAX implementácia parsera: jdk, woodstox, aalto alebo plný názov triedy XMLInputFactory. */
+    private String staxBackend = "jdk";
+
+    /** Deaktivovať produkty, ktoré zmizli z feedu (staging missing_since + product_sources/products). */
+    private boolean tombstoneMissing = true;
+
+    /** Maximálny podiel chýbajúcich produktov - pri viac sa feed považuje za neúplný a nič sa nedeaktivuje. */
+    private double tombstoneMaxRatio = 0.2;
+
+    /** Algoritmus checksumu produktu: SHA256 (kompatibilný so starými záznamami) alebo MURMUR3. */
+    private HumedProductEncoder.ChecksumAlgorithm checksumAlgorithm = HumedProductEncoder.ChecksumAlgorithm.SHA256;
+
+    /** Adresár archívu stiahnutých feedov (gzip) pre replay. Prázdne = archív vypnutý. */
+    private String archiveDir;
+
+    /** Počet posledných snapshotov v archíve. 0 = bez mazania. */
+    private int archiveRetention = 30;
+
     public String getFeedUrl() {
         return feedUrl;
     }
@@ -34,4 +87,132 @@ public class HumedConfig {
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
     }
+
+    public boolean isStreamingDownload() {
+        return streamingDownload;
+    }
+
+    public void setStreamingDownload(boolean streamingDownload) {
+        this.streamingDownload = streamingDownload;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public boolean isBulkUpsert() {
+        return bulkUpsert;
+    }
+
+    public void setBulkUpsert(boolean bulkUpsert) {
+        this.bulkUpsert = bulkUpsert;
+    }
+
+    public boolean isCopyLoad() {
+        return copyLoad;
+    }
+
+    public void setCopyLoad(boolean copyLoad) {
+        this.copyLoad = copyLoad;
+    }
+
+    public boolean isChecksumIndex() {
+        return checksumIndex;
+    }
+
+    public void setChecksumIndex(boolean checksumIndex) {
+        this.checksumIndex = checksumIndex;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public HumedProductEncoder.ChecksumAlgorithm getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
+    public void setChecksumAlgorithm(HumedProductEncoder.ChecksumAlgorithm checksumAlgorithm) {
+        this.checksumAlgorithm = checksumAlgorithm;
+    }
+
+    public int getParseParallelism() {
+        return parseParallelism;
+    }
+
+    public void setParseParallelism(int parseParallelism) {
+        this.parseParallelism = parseParallelism;
+    }
+
+    public boolean isParseOrdered() {
+        return parseOrdered;
+    }
+
+    public void setParseOrdered(boolean parseOrdered) {
+        this.parseOrdered = parseOrdered;
+    }
+
+    public String getStaxBackend() {
+        return staxBackend;
+    }
+
+    public void setStaxBackend(String staxBackend) {
+        this.staxBackend = staxBackend;
+    }
+
+    public boolean isTombstoneMissing() {
+        return tombstoneMissing;
+    }
+
+    public void setTombstoneMissing(boolean tombstoneMissing) {
+        this.tombstoneMissing = tombstoneMissing;
+    }
+
+    public double getTombstoneMaxRatio() {
+        return tombstoneMaxRatio;
+    }
+
+    public void setTombstoneMaxRatio(double tombstoneMaxRatio) {
+        this.tombstoneMaxRatio = tombstoneMaxRatio;
+    }
+
+    public String getArchiveDir() {
+        return archiveDir;
+    }
+
+    public void setArchiveDir(String archiveDir) {
+        this.archiveDir = archiveDir;
+    }
+
+    public int getArchiveRetention() {
+        return archiveRetention;
+    }
+
+    public void setArchiveRetention(int archiveRetention) {
+        this.archiveRetention = archiveRetention;
+    }
 }
@@ -0,0 +1,87 @@
+package sk.pcola.etl.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "etl.normalize")
+public class NormalizerConfig {
+
+    /**
+     * Implementácia normalizácie staging -> catalog.
+     */
+    public enum Engine {
+        /** Produkt po produkte v Jave (CategoryMatcher, per-row upsert). */
+        JAVA,
+        /** Niekoľko set-based SQL príkazov nad celým staging (SqlProductNormalizer). */
+        SQL
+    }
+
+    /** Engine normalizácie: java alebo sql. */
+    private Engine engine = Engine.JAVA;
+
+    /** O koľko sa pri inkrementálnom behu posunie watermark späť (zápisy dlhých sync transakcií). */
+    private Duration watermarkOverlap = Duration.ofMinutes(10);
+
+    /** Počet produktov v jednej transakcii Java normalizácie (aj fetch size kurzora nad staging). */
+    private int chunkSize = 500;
+
+    /** Počet paralelných hash partícií feed_id v Java engine. Každá potrebuje 2 spojenia z poolu. */
+    private int partitions = 1;
+
+    /** Počet zmien mapovania v jednej dávke zápisu do category_mapping_log. */
+    private int mappingLogBatchSize = 1000;
+
+    /** Max. počet (zdroj, kategória) v cache výsledkov mapovania podľa kategórie, 0 = bez cache. */
+    private int categoryCacheSize = 10_000;
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    public Duration getWatermarkOverlap() {
+        return watermarkOverlap;
+    }
+
+    public void setWatermarkOverlap(Duration watermarkOverlap) {
+        this.watermarkOverlap = watermarkOverlap;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    public int getMappingLogBatchSize() {
+        return mappingLogBatchSize;
+    }
+
+    public void setMappingLogBatchSize(int mappingLogBatchSize) {
+        this.mappingLogBatchSize = mappingLogBatchSize;
+    }
+
+    public int getCategoryCacheSize() {
+        return categoryCacheSize;
+    }
+
+    public void setCategoryCacheSize(int categoryCacheSize) {
+        this.categoryCacheSize = categoryCacheSize;
+    }
+}
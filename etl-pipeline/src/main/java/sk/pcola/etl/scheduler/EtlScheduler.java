@@ -40,12 +40,11 @@ public class EtlScheduler {
             HumedStagingService.UpsertResult syncResult = humedSyncJob.sync();
             log.info("Scheduled HUMED sync completed: {}", syncResult);
 
-            // Po úspešnom sync spusti normalizáciu
-            if (syncResult.total() > 0) {
-                log.info("Starting product normalization...");
-                ProductNormalizer.NormalizeResult normalizeResult = productNormalizer.normalizeHumed();
-                log.info("Normalization completed: {}", normalizeResult);
-            }
+            // Po úspešnom sync vždy spusti normalizáciu - aj pri nezmenenom feede
+            // (zmena pravidiel, chybné produkty z minulého behu); bez zmien je inkrementálny beh lacný
+            log.info("Starting product normalization...");
+            ProductNormalizer.NormalizeResult normalizeResult = productNormalizer.normalizeHumed();
+            log.info("Normalization completed: {}", normalizeResult);
         } catch (Exception e) {
             log.error("Scheduled HUMED sync failed: {}", e.getMessage(), e);
         }
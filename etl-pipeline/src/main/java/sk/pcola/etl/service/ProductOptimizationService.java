@@ -802,8 +802,8 @@ public class ProductOptimizationService {
                 SELECT
                     po.id, po.sku, po.original_name, po.original_description,
                     COALESCE(hr.gtin, '') as gtin,
-                    (hr.attributes->>'Balenie')::int as packaging_qty,
-                    (hr.attributes->>'Paleta')::int as pallet_qty,
+                    hr.pack_quantity as packaging_qty,
+                    hr.pallet_quantity as pallet_qty,
                     '' as category
                 FROM catalog.products_optimized po
                 LEFT JOIN staging.humed_raw hr ON hr.sku = po.sku
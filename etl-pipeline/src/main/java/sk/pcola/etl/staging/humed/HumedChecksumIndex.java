@@ -0,0 +1,161 @@
+package sk.pcola.etl.staging.humed;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Kompaktný index feed_id -> checksum zo staging.humed_raw, načítaný raz na začiatku syncu.
+ *
+ * Numerické feed_id (bežný prípad) sú kľúče priamo ako long v open-addressing tabuľke,
+ * checksum sa ukladá skrátený na 128 bitov (dva long). Jeden záznam = 24 bajtov
+ * bez objektov na heape. Nenumerické feed_id idú do záložnej mapy.
+ *
+ * Index je len na čítanie počas parsovania - zápisy robí jedno vlákno pri načítaní.
+ */
+class HumedChecksumIndex {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final double MAX_LOAD = 0.6;
+
+    private long[] keys;
+    private long[] hashHi;
+    private long[] hashLo;
+    private int size;
+
+    private final Map<String, long[]> otherKeys = new HashMap<>();
+
+    HumedChecksumIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit((int) Math.max(16, expectedSize / MAX_LOAD)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Pridá záznam. Checksum, ktorý nie je aspoň 32 hex znakov, sa ignoruje
+     * (produkt sa potom vždy považuje za zmenený).
+     */
+    void put(String feedId, String checksum) {
+        if (feedId == null || !isHex128(checksum)) {
+            return;
+        }
+        long hi = Long.parseUnsignedLong(checksum, 0, 16, 16);
+        long lo = Long.parseUnsignedLong(checksum, 16, 32, 16);
+
+        long key = numericKey(feedId);
+        if (key == EMPTY) {
+            otherKeys.put(feedId, new long[]{hi, lo});
+            return;
+        }
+
+        if (size + 1 > keys.length * MAX_LOAD) {
+            grow();
+        }
+        insert(key, hi, lo);
+    }
+
+    /**
+     * Vráti true, ak index pozná produkt s rovnakým checksumom.
+     */
+    boolean isUnchanged(String feedId, String checksum) {
+        if (feedId == null || !isHex128(checksum)) {
+            return false;
+        }
+        long hi = Long.parseUnsignedLong(checksum, 0, 16, 16);
+        long lo = Long.parseUnsignedLong(checksum, 16, 32, 16);
+
+        long key = numericKey(feedId);
+        if (key == EMPTY) {
+            long[] stored = otherKeys.get(feedId);
+            return stored != null && stored[0] == hi && stored[1] == lo;
+        }
+
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == EMPTY) {
+                return false;
+            }
+            if (k == key) {
+                return hashHi[i] == hi && hashLo[i] == lo;
+            }
+        }
+    }
+
+    int size() {
+        return size + otherKeys.size();
+    }
+
+    private void insert(long key, long hi, long lo) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == EMPTY) {
+                keys[i] = key;
+                hashHi[i] = hi;
+                hashLo[i] = lo;
+                size++;
+                return;
+            }
+            if (keys[i] == key) {
+                hashHi[i] = hi;
+                hashLo[i] = lo;
+                return;
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldHi = hashHi;
+        long[] oldLo = hashLo;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                insert(oldKeys[i], oldHi[i], oldLo[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        hashHi = new long[capacity];
+        hashLo = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Kanonické nezáporné číslo (bez úvodných núl) do 18 číslic, inak EMPTY.
+     */
+    private static long numericKey(String feedId) {
+        int len = feedId.length();
+        if (len == 0 || len > 18 || (len > 1 && feedId.charAt(0) == '0')) {
+            return EMPTY;
+        }
+        long value = 0;
+        for (int i = 0; i < len; i++) {
+            char c = feedId.charAt(i);
+            if (c < '0' || c > '9') {
+                return EMPTY;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isHex128(String checksum) {
+        if (checksum == null || checksum.length() < 32) {
+            return false;
+        }
+        for (int i = 0; i < 32; i++) {
+            if (Character.digit(checksum.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
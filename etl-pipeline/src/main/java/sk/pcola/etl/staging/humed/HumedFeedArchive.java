@@ -0,0 +1,166 @@
+package sk.pcola.etl.staging.humed;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import sk.pcola.etl.config.HumedConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Lokálny archív stiahnutých HUMED feedov (gzip) pre replay a záťažové testy.
+ *
+ * Snapshot: {@code humed_<yyyyMMdd-HHmmss>_<checksum>.xml.gz} v etl.humed.archive-dir.
+ * Feed s rovnakým checksumom sa archivuje len raz, drží sa posledných
+ * etl.humed.archive-retention snapshotov.
+ */
+@Component
+public class HumedFeedArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(HumedFeedArchive.class);
+
+    private static final String PREFIX = "humed_";
+    private static final String SUFFIX = ".xml.gz";
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final HumedConfig config;
+
+    public HumedFeedArchive(HumedConfig config) {
+        this.config = config;
+    }
+
+    public boolean isEnabled() {
+        return config.getArchiveDir() != null && !config.getArchiveDir().isBlank();
+    }
+
+    /**
+     * Uloží feed do archívu. Chyba archivácie sync nezastaví - len sa zaloguje.
+     */
+    public void archive(Path feedFile, String feedChecksum) {
+        if (!isEnabled() || feedChecksum == null) {
+            return;
+        }
+        try {
+            Path dir = Files.createDirectories(Path.of(config.getArchiveDir()));
+            if (findByChecksum(dir, feedChecksum).isPresent()) {
+                log.debug("Feed {} already archived", feedChecksum);
+                return;
+            }
+
+            Path target = dir.resolve(PREFIX + LocalDateTime.now().format(TIMESTAMP) + "_" + feedChecksum + SUFFIX);
+            Path tmp = dir.resolve(target.getFileName() + ".tmp");
+            try (InputStream in = Files.newInputStream(feedFile);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+                in.transferTo(out);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Feed archived to: {} ({} bytes)", target, Files.size(target));
+
+            applyRetention(dir);
+        } catch (IOException e) {
+            log.warn("Failed to archive HUMED feed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Nájde snapshot podľa cesty, názvu súboru alebo prefixu checksumu.
+     */
+    public Path resolve(String snapshot) {
+        Path direct = Path.of(snapshot);
+        if (Files.isRegularFile(direct)) {
+            return direct;
+        }
+        if (!isEnabled()) {
+            throw new IllegalArgumentException("Snapshot not found: " + snapshot);
+        }
+
+        Path dir = Path.of(config.getArchiveDir());
+        Path named = dir.resolve(snapshot);
+        if (Files.isRegularFile(named)) {
+            return named;
+        }
+        try {
+            List<Path> matches = list(dir).stream()
+                    .filter(p -> checksumOf(p).startsWith(snapshot))
+                    .toList();
+            if (matches.size() != 1) {
+                throw new IllegalArgumentException(matches.isEmpty()
+                        ? "Snapshot not found: " + snapshot
+                        : "Ambiguous snapshot " + snapshot + ": " + matches);
+            }
+            return matches.getFirst();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Rozbalí snapshot do dočasného súboru (parser potrebuje súbor kvôli mapovaniu do pamäte).
+     */
+    public Path extract(Path snapshot) throws IOException {
+        Path target = Files.createTempFile("humed_replay_", ".xml");
+        if (!snapshot.getFileName().toString().endsWith(".gz")) {
+            return Files.copy(snapshot, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(snapshot), 1 << 16)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return target;
+    }
+
+    private Optional<Path> findByChecksum(Path dir, String feedChecksum) throws IOException {
+        return list(dir).stream()
+                .filter(p -> checksumOf(p).equals(feedChecksum))
+                .findFirst();
+    }
+
+    private void applyRetention(Path dir) throws IOException {
+        int retention = config.getArchiveRetention();
+        if (retention <= 0) {
+            return;
+        }
+        List<Path> snapshots = list(dir);
+        for (int i = 0; i < snapshots.size() - retention; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+            log.info("Deleted old feed snapshot: {}", snapshots.get(i));
+        }
+    }
+
+    /**
+     * Snapshoty zoradené od najstaršieho (timestamp je v názve).
+     */
+    private static List<Path> list(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted(Comparator.comparing(p -> p.getFileName().toString()))
+                    .toList();
+        }
+    }
+
+    private static String checksumOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        int start = name.lastIndexOf('_') + 1;
+        return name.substring(start, name.length() - SUFFIX.length());
+    }
+}
@@ -0,0 +1,200 @@
+package sk.pcola.etl.staging.humed;
+
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rozdelenie HUMED feedu na nezávislé časti (shardy) podľa hraníc {@code <item>} elementov.
+ *
+ * Feed je plochý zoznam itemov v {@code <rss><channel>}, takže každý shard sa dá parsovať
+ * samostatne: shard = hlavička súboru pred prvým itemom + súvislý úsek itemov
+ * + koniec súboru za posledným itemom. Hlavička nesie XML deklaráciu a namespace
+ * (xmlns:g), takže každý shard je samostatný well-formed dokument.
+ *
+ * Sken pracuje nad bajtmi (UTF-8) a preskakuje komentáre a CDATA sekcie,
+ * v ktorých sa {@code <item>} môže vyskytnúť ako text.
+ */
+final class HumedFeedSharder {
+
+    private final ByteBuffer feed;
+    private int[] itemStarts = new int[1024];
+    private int[] itemEnds = new int[1024];
+    private int itemCount;
+
+    private HumedFeedSharder(ByteBuffer feed) {
+        this.feed = feed;
+    }
+
+    /**
+     * Úsek feedu s celými itemami [start, end).
+     */
+    record Shard(int index, int start, int end, int items) {
+    }
+
+    /**
+     * Nájde hranice itemov. Ak feed nemá očakávanú štruktúru, {@link #itemCount()} je 0.
+     */
+    static HumedFeedSharder scan(ByteBuffer feed) {
+        HumedFeedSharder sharder = new HumedFeedSharder(feed);
+        if (!sharder.scanItems()) {
+            sharder.itemCount = 0;
+        }
+        return sharder;
+    }
+
+    int itemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Rozdelí itemy do najviac {@code maxShards} súvislých úsekov s rovnakým počtom itemov.
+     */
+    List<Shard> split(int maxShards) {
+        if (itemCount == 0) {
+            return Collections.emptyList();
+        }
+        int shards = Math.max(1, Math.min(maxShards, itemCount));
+        List<Shard> result = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            int first = (int) ((long) itemCount * i / shards);
+            int last = (int) ((long) itemCount * (i + 1) / shards) - 1;
+            result.add(new Shard(i, itemStarts[first], itemEnds[last], last - first + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Otvorí shard ako samostatný XML dokument (hlavička + itemy + koniec feedu).
+     */
+    InputStream open(Shard shard) {
+        return new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteBufferInputStream(feed.slice(0, itemStarts[0])),
+                new ByteBufferInputStream(feed.slice(shard.start(), shard.end() - shard.start())),
+                new ByteBufferInputStream(feed.slice(itemEnds[itemCount - 1], feed.limit() - itemEnds[itemCount - 1]))
+        )));
+    }
+
+    /**
+     * Prejde feed a zapamätá si začiatky ({@code <item}) a konce (za {@code </item>}) itemov.
+     * Vnorené itemy ani neuzavretý item nie sú podporované - vtedy vráti false.
+     */
+    private boolean scanItems() {
+        int limit = feed.limit();
+        int depth = 0;
+        int i = 0;
+
+        while (i < limit) {
+            if (feed.get(i) != '<') {
+                i++;
+                continue;
+            }
+            if (startsWith(i, "<!--")) {
+                i = indexOf(i + 4, "-->");
+                if (i < 0) {
+                    return false;
+                }
+                i += 3;
+            } else if (startsWith(i, "<![CDATA[")) {
+                i = indexOf(i + 9, "]]>");
+                if (i < 0) {
+                    return false;
+                }
+                i += 3;
+            } else if (startsWith(i, "<item") && isNameEnd(i + 5)) {
+                if (depth++ > 0) {
+                    return false;
+                }
+                addStart(i);
+                i += 5;
+            } else if (startsWith(i, "</item") && isNameEnd(i + 6)) {
+                int close = indexOf(i + 6, ">");
+                if (close < 0 || --depth != 0) {
+                    return false;
+                }
+                itemEnds[itemCount - 1] = close + 1;
+                i = close + 1;
+            } else {
+                i++;
+            }
+        }
+        return depth == 0;
+    }
+
+    private void addStart(int position) {
+        if (itemCount == itemStarts.length) {
+            itemStarts = Arrays.copyOf(itemStarts, itemCount * 2);
+            itemEnds = Arrays.copyOf(itemEnds, itemCount * 2);
+        }
+        itemStarts[itemCount++] = position;
+    }
+
+    private boolean isNameEnd(int position) {
+        if (position >= feed.limit()) {
+            return false;
+        }
+        byte b = feed.get(position);
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private boolean startsWith(int position, String ascii) {
+        if (position + ascii.length() > feed.limit()) {
+            return false;
+        }
+        for (int k = 0; k < ascii.length(); k++) {
+            if (feed.get(position + k) != ascii.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(int from, String ascii) {
+        byte first = (byte) ascii.charAt(0);
+        for (int i = from, last = feed.limit() - ascii.length(); i <= last; i++) {
+            if (feed.get(i) == first && startsWith(i, ascii)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * InputStream nad ByteBuffer (napr. výsek memory-mapped súboru) bez kopírovania do heapu.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package sk.pcola.etl.staging.humed;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.stereotype.Component;
+import sk.pcola.etl.common.util.Murmur3Hash128;
+import sk.pcola.etl.config.HumedConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Kódovanie produktu pre staging - jedna serializácia pre checksum aj jsonb stĺpce.
+ *
+ * Kategórie, obrázky a atribúty sa serializujú raz do znovupoužiteľného buffera
+ * (jeden na vlákno), rovnaké bajty idú do hashera a do jsonb parametrov.
+ *
+ * Algoritmy (etl.humed.checksum-algorithm):
+ * - SHA256: pôvodný formát (polia spojené '|'), checksumy sú zhodné so staršími záznamami
+ * - MURMUR3: MurmurHash3 128-bit nad kanonickým formátom (ceny bez koncových núl,
+ *   atribúty zoradené podľa kľúča), aby sa dal prepočítať aj z dát v staging
+ */
+@Component
+public class HumedProductEncoder {
+
+    public enum ChecksumAlgorithm {
+        SHA256,
+        MURMUR3
+    }
+
+    /**
+     * Skupiny stĺpcov staging.humed_raw s vlastným hashom (poradie = index v field_hashes).
+     * Pri zmene checksumu sa prepíšu len skupiny so zmeneným hashom.
+     */
+    public enum FieldGroup {
+        IDENTITY("sku", "gtin", "title", "link"),
+        DESCRIPTION("description"),
+        PRICE("price_purchase", "price_retail"),
+        AVAILABILITY("availability", "condition", "weight_grams"),
+        CATEGORIES("categories"),
+        IMAGES("images"),
+        ATTRIBUTES("attributes");
+
+        private final List<String> columns;
+
+        FieldGroup(String... columns) {
+            this.columns = List.of(columns);
+        }
+
+        public List<String> columns() {
+            return columns;
+        }
+    }
+
+    /**
+     * Zakódovaný produkt - checksum, hashe skupín polí a JSON pre jsonb stĺpce.
+     */
+    public record EncodedProduct(String checksum, long[] fieldHashes,
+                                 String categoriesJson, String imagesJson, String attributesJson) {
+    }
+
+    private static final byte SEPARATOR = '|';
+    private static final byte GROUP_SEPARATOR = 0x1f;
+    private static final byte NULL_MARKER = 0x00;
+
+    private final ObjectWriter jsonWriter;
+    private final ChecksumAlgorithm algorithm;
+    private final ThreadLocal<EncoderState> state;
+
+    public HumedProductEncoder(ObjectMapper objectMapper, HumedConfig config) {
+        this.jsonWriter = objectMapper.writer();
+        this.algorithm = config.getChecksumAlgorithm();
+        this.state = ThreadLocal.withInitial(() -> new EncoderState(algorithm));
+    }
+
+    public ChecksumAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Zakóduje produkt - checksum, hashe skupín aj JSON stĺpce z jednej serializácie.
+     */
+    public EncodedProduct encode(HumedRawProduct product) {
+        EncoderState st = state.get();
+        long[] groups = new long[FieldGroup.values().length];
+
+        hashScalars(st, product);
+        String categories = st.json(jsonWriter, product.getCategories(), "[]");
+        groups[FieldGroup.CATEGORIES.ordinal()] = st.lastJsonHash();
+        String images = st.json(jsonWriter, product.getImages(), "[]");
+        groups[FieldGroup.IMAGES.ordinal()] = st.lastJsonHash();
+        String attributes = st.json(jsonWriter, attributes(product), "[]");
+        groups[FieldGroup.ATTRIBUTES.ordinal()] = st.lastJsonHash();
+        String checksum = st.finish();
+
+        groups[FieldGroup.IDENTITY.ordinal()] = st.groupHash(
+                product.getSku(), product.getGtin(), product.getTitle(), product.getLink());
+        groups[FieldGroup.DESCRIPTION.ordinal()] = st.groupHash(product.getDescription());
+        groups[FieldGroup.PRICE.ordinal()] = st.groupHash(
+                canonical(product.getPricePurchase()), canonical(product.getPriceRetail()));
+        groups[FieldGroup.AVAILABILITY.ordinal()] = st.groupHash(
+                product.getAvailability(), product.getCondition(),
+                product.getWeightGrams() != null ? product.getWeightGrams().toString() : null);
+
+        return new EncodedProduct(checksum, groups, categories, images, attributes);
+    }
+
+    /**
+     * Vypočíta len checksum - JSON sa nevytvára ako String.
+     */
+    public String checksum(HumedRawProduct product) {
+        EncoderState st = state.get();
+        hashScalars(st, product);
+        st.jsonHashOnly(jsonWriter, product.getCategories(), "[]");
+        st.jsonHashOnly(jsonWriter, product.getImages(), "[]");
+        st.jsonHashOnly(jsonWriter, attributes(product), "[]");
+        return st.finish();
+    }
+
+    private void hashScalars(EncoderState st, HumedRawProduct product) {
+        st.begin();
+        st.text(product.getSku());
+        st.text(product.getTitle());
+        st.text(product.getDescription());
+        st.text(decimal(product.getPricePurchase()));
+        st.text(decimal(product.getPriceRetail()));
+        st.text(product.getWeightGrams() != null ? product.getWeightGrams().toString() : "");
+        st.text(product.getAvailability());
+    }
+
+    private String decimal(BigDecimal value) {
+        if (value == null) {
+            return "";
+        }
+        return algorithm == ChecksumAlgorithm.MURMUR3
+                ? value.stripTrailingZeros().toPlainString()
+                : value.toPlainString();
+    }
+
+    private static String canonical(BigDecimal value) {
+        return value != null ? value.stripTrailingZeros().toPlainString() : null;
+    }
+
+    private Map<String, String> attributes(HumedRawProduct product) {
+        Map<String, String> attrs = product.getAttributes();
+        if (algorithm == ChecksumAlgorithm.MURMUR3 && attrs != null && attrs.size() > 1) {
+            return new TreeMap<>(attrs);
+        }
+        return attrs;
+    }
+
+    /**
+     * Stav kódovania jedného vlákna - buffer pre JSON a hasher.
+     */
+    private static final class EncoderState {
+
+        private final ReusableBuffer buffer = new ReusableBuffer();
+        private final MessageDigest sha256;
+        private final Murmur3Hash128 murmur;
+        private final Murmur3Hash128 groupHasher = new Murmur3Hash128();
+        private boolean first;
+
+        EncoderState(ChecksumAlgorithm algorithm) {
+            if (algorithm == ChecksumAlgorithm.SHA256) {
+                try {
+                    this.sha256 = MessageDigest.getInstance("SHA-256");
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+                this.murmur = null;
+            } else {
+                this.sha256 = null;
+                this.murmur = new Murmur3Hash128();
+            }
+        }
+
+        void begin() {
+            first = true;
+            if (sha256 != null) {
+                sha256.reset();
+            } else {
+                murmur.reset();
+            }
+        }
+
+        void text(String value) {
+            byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+            separator();
+            update(bytes, 0, bytes.length);
+        }
+
+        String json(ObjectWriter writer, Object value, String fallback) {
+            jsonHashOnly(writer, value, fallback);
+            return new String(buffer.array(), 0, buffer.size(), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * 64-bit hash posledného serializovaného JSON (z rovnakých bajtov ako checksum).
+         */
+        long lastJsonHash() {
+            groupHasher.update(buffer.array(), 0, buffer.size());
+            return groupHasher.finishLong();
+        }
+
+        /**
+         * 64-bit hash skupiny skalárnych polí - NULL sa líši od prázdneho reťazca.
+         */
+        long groupHash(String... values) {
+            for (String value : values) {
+                if (value == null) {
+                    groupHasher.update(NULL_MARKER);
+                } else {
+                    groupHasher.update(value.getBytes(StandardCharsets.UTF_8));
+                }
+                groupHasher.update(GROUP_SEPARATOR);
+            }
+            return groupHasher.finishLong();
+        }
+
+        void jsonHashOnly(ObjectWriter writer, Object value, String fallback) {
+            serialize(writer, value, fallback);
+            separator();
+            update(buffer.array(), 0, buffer.size());
+        }
+
+        String finish() {
+            return sha256 != null
+                    ? HexFormat.of().formatHex(sha256.digest())
+                    : murmur.finishHex();
+        }
+
+        private void serialize(ObjectWriter writer, Object value, String fallback) {
+            buffer.reset();
+            try {
+                writer.writeValue(buffer, value);
+            } catch (IOException e) {
+                buffer.reset();
+                byte[] bytes = fallback.getBytes(StandardCharsets.UTF_8);
+                buffer.write(bytes, 0, bytes.length);
+            }
+        }
+
+        private void separator() {
+            if (first) {
+                first = false;
+            } else if (sha256 != null) {
+                sha256.update(SEPARATOR);
+            } else {
+                murmur.update(SEPARATOR);
+            }
+        }
+
+        private void update(byte[] bytes, int off, int len) {
+            if (sha256 != null) {
+                sha256.update(bytes, off, len);
+            } else {
+                murmur.update(bytes, off, len);
+            }
+        }
+    }
+
+    /**
+     * ByteArrayOutputStream s prístupom k internému poľu (bez kópie).
+     */
+    private static final class ReusableBuffer extends ByteArrayOutputStream {
+
+        ReusableBuffer() {
+            super(8192);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package sk.pcola.etl.staging.humed;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Reprezentuje jeden produkt z HUMED XML feedu.
@@ -33,6 +37,9 @@ public class HumedRawProduct {
     private List<String> images = new ArrayList<>();
     private Map<String, String> attributes = new HashMap<>();  // Balenie, Paleta
 
+    // Zakódovaný produkt z filtra nezmenených - writer ho použije bez druhej serializácie
+    private HumedProductEncoder.EncodedProduct encoded;
+
     // Getters and Setters
 
     public String getFeedId() {
@@ -163,6 +170,18 @@ public class HumedRawProduct {
         }
     }
 
+    /**
+     * Zakódovaný produkt, ak už bol počas syncu vytvorený, inak null.
+     * Po parsovaní sa produkt nemení, takže kódovanie ostáva platné.
+     */
+    HumedProductEncoder.EncodedProduct encoded() {
+        return encoded;
+    }
+
+    void encoded(HumedProductEncoder.EncodedProduct encoded) {
+        this.encoded = encoded;
+    }
+
     /**
      * Vráti najhlbšiu kategóriu (posledná v zozname).
      */
@@ -186,15 +205,14 @@ public class HumedRawProduct {
 
     /**
      * Vnorená trieda pre kategóriu.
+     * Nemenná - rovnaké inštancie zdieľajú produkty jedného feedu (HumedValuePool).
      */
     public static class HumedCategory {
-        private String id;
-        private String name;
-
-        public HumedCategory() {
-        }
+        private final String id;
+        private final String name;
 
-        public HumedCategory(String id, String name) {
+        @JsonCreator
+        public HumedCategory(@JsonProperty("id") String id, @JsonProperty("name") String name) {
             this.id = id;
             this.name = name;
         }
@@ -203,16 +221,24 @@ public class HumedRawProduct {
             return id;
         }
 
-        public void setId(String id) {
-            this.id = id;
-        }
-
         public String getName() {
             return name;
         }
 
-        public void setName(String name) {
-            this.name = name;
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof HumedCategory other)) {
+                return false;
+            }
+            return Objects.equals(id, other.id) && Objects.equals(name, other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, name);
         }
 
         @Override
@@ -0,0 +1,71 @@
+package sk.pcola.etl.staging.humed;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Množina feed_id, ktoré sa vyskytli v aktuálnom feede.
+ *
+ * Kanonické numerické feed_id (bežný prípad) sú bity v BitSet - pár kB aj pre
+ * stovky tisíc produktov. Ostatné feed_id idú do záložnej HashSet.
+ * Nie je thread-safe - plní ju consumer parsera na jednom vlákne.
+ */
+class HumedSeenIds {
+
+    /** Najväčšie feed_id v BitSet (2 MB) - väčšie idú do HashSet. */
+    private static final int MAX_BIT = 1 << 24;
+
+    private final BitSet numeric = new BitSet();
+    private final Set<String> other = new HashSet<>();
+
+    void add(String feedId) {
+        if (feedId == null) {
+            return;
+        }
+        int key = numericKey(feedId);
+        if (key >= 0) {
+            numeric.set(key);
+        } else {
+            other.add(feedId);
+        }
+    }
+
+    int size() {
+        return numeric.cardinality() + other.size();
+    }
+
+    /**
+     * Feed_id ako pole pre SQL parameter (text[]).
+     */
+    String[] toArray() {
+        String[] result = new String[size()];
+        int i = 0;
+        for (int key = numeric.nextSetBit(0); key >= 0; key = numeric.nextSetBit(key + 1)) {
+            result[i++] = Integer.toString(key);
+        }
+        for (String feedId : other) {
+            result[i++] = feedId;
+        }
+        return result;
+    }
+
+    /**
+     * Kanonické nezáporné číslo (bez úvodných núl) do MAX_BIT, inak -1.
+     */
+    private static int numericKey(String feedId) {
+        int len = feedId.length();
+        if (len == 0 || len > 8 || (len > 1 && feedId.charAt(0) == '0')) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < len; i++) {
+            char c = feedId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value <= MAX_BIT ? value : -1;
+    }
+}
@@ -1,23 +1,43 @@
 package sk.pcola.etl.staging.humed;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.Instant;
-import java.util.HexFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
 
 /**
  * Service pre ukladanie HUMED produktov do staging.humed_raw tabuľky.
@@ -27,12 +47,55 @@ public class HumedStagingService {
 
     private static final Logger log = LoggerFactory.getLogger(HumedStagingService.class);
 
+    /**
+     * Spoločná ON CONFLICT vetva pre set-based zápisy - mení len riadky so zmeneným checksumom
+     * a v nich len skupiny stĺpcov so zmeneným hashom (field_hashes). Nezmenené stĺpce si ponechajú
+     * pôvodnú hodnotu vrátane TOAST odkazu, takže sa description ani jsonb neprepisujú.
+     */
+    private static final String ON_CONFLICT_UPDATE_CHANGED = buildOnConflictUpdate();
+
+    private static final int REHASH_BATCH_SIZE = 1000;
+
+    /** Bind parametre jedného riadku v upsertBatchBulk. */
+    private static final int PARAMETERS_PER_ROW = 18;
+
+    /** PostgreSQL protokol má najviac 32767 bind parametrov na príkaz. */
+    private static final int MAX_ROWS_PER_STATEMENT = Short.MAX_VALUE / PARAMETERS_PER_ROW;
+
+    private static final Set<String> JSONB_COLUMNS = Set.of("categories", "images", "attributes");
+
+    private static String buildOnConflictUpdate() {
+        StringJoiner set = new StringJoiner(",\n    ", "ON CONFLICT (feed_id) DO UPDATE SET\n    ", "\n");
+        for (HumedProductEncoder.FieldGroup group : HumedProductEncoder.FieldGroup.values()) {
+            int index = group.ordinal() + 1; // PostgreSQL polia sú od 1
+            for (String column : group.columns()) {
+                set.add("%1$s = CASE WHEN humed_raw.field_hashes[%2$d] IS DISTINCT FROM EXCLUDED.field_hashes[%2$d]"
+                        .formatted(column, index)
+                        + " THEN EXCLUDED.%1$s ELSE humed_raw.%1$s END".formatted(column));
+            }
+        }
+        set.add("checksum = EXCLUDED.checksum");
+        set.add("field_hashes = EXCLUDED.field_hashes");
+        set.add("updated_at = EXCLUDED.updated_at");
+        return set + """
+            WHERE humed_raw.checksum IS DISTINCT FROM EXCLUDED.checksum
+            RETURNING (xmax = 0) AS inserted
+            """;
+    }
+
     private final JdbcTemplate jdbc;
     private final ObjectMapper objectMapper;
+    private final HumedProductEncoder encoder;
+    private final TransactionTemplate batchTx;
 
-    public HumedStagingService(JdbcTemplate jdbc, ObjectMapper objectMapper) {
+    public HumedStagingService(JdbcTemplate jdbc, ObjectMapper objectMapper, HumedProductEncoder encoder,
+                               PlatformTransactionManager transactionManager) {
         this.jdbc = jdbc;
         this.objectMapper = objectMapper;
+        this.encoder = encoder;
+
+        // Volanie upsertBatch z vnútra služby obíde proxy - @Transactional by neplatil
+        this.batchTx = new TransactionTemplate(transactionManager);
     }
 
     /**
@@ -53,38 +116,35 @@ public class HumedStagingService {
      */
     @Transactional
     public boolean upsert(HumedRawProduct product) {
-        String checksum = computeChecksum(product);
+        HumedProductEncoder.EncodedProduct encoded = encode(product);
+        String checksum = encoded.checksum();
 
         // Skontroluj či existuje a či sa zmenil
-        String existingChecksum = jdbc.query(
-                "SELECT checksum FROM staging.humed_raw WHERE feed_id = ?",
-                rs -> rs.next() ? rs.getString("checksum") : null,
-                product.getFeedId()
-        );
+        StoredHashes stored = findStoredHashes(product.getFeedId());
 
-        if (existingChecksum != null) {
+        if (stored != null) {
             // Existuje - skontroluj checksum
-            if (checksum.equals(existingChecksum)) {
+            if (checksum.equals(stored.checksum())) {
                 // Bez zmeny
                 return false;
             }
-            // Update
-            return update(product, checksum);
+            // Update len zmenených skupín
+            return update(product, encoded, stored.fieldHashes());
         } else {
             // Insert
-            return insert(product, checksum);
+            return insert(product, encoded);
         }
     }
 
-    private boolean insert(HumedRawProduct product, String checksum) {
+    private boolean insert(HumedRawProduct product, HumedProductEncoder.EncodedProduct encoded) {
         String sql = """
             INSERT INTO staging.humed_raw (
                 feed_id, sku, gtin, title, description, link,
                 price_purchase, price_retail, weight_grams,
                 availability, condition,
                 categories, images, attributes,
-                checksum, imported_at, updated_at
-            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?::jsonb, ?::jsonb, ?::jsonb, ?, ?, ?)
+                checksum, field_hashes, imported_at, updated_at
+            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?::jsonb, ?::jsonb, ?::jsonb, ?, ?, ?, ?)
             """;
 
         try {
@@ -102,10 +162,11 @@ public class HumedStagingService {
                     product.getWeightGrams(),
                     product.getAvailability(),
                     product.getCondition(),
-                    toJson(product.getCategories()),
-                    toJson(product.getImages()),
-                    toJson(product.getAttributes()),
-                    checksum,
+                    encoded.categoriesJson(),
+                    encoded.imagesJson(),
+                    encoded.attributesJson(),
+                    encoded.checksum(),
+                    encoded.fieldHashes(),
                     now,
                     now
             );
@@ -116,36 +177,34 @@ public class HumedStagingService {
         }
     }
 
-    private boolean update(HumedRawProduct product, String checksum) {
-        String sql = """
-            UPDATE staging.humed_raw SET
-                sku = ?, gtin = ?, title = ?, description = ?, link = ?,
-                price_purchase = ?, price_retail = ?, weight_grams = ?,
-                availability = ?, condition = ?,
-                categories = ?::jsonb, images = ?::jsonb, attributes = ?::jsonb,
-                checksum = ?, updated_at = ?
-            WHERE feed_id = ?
-            """;
+    /**
+     * Aktualizuje len skupiny stĺpcov, ktorých hash sa líši od uloženého.
+     * Bez uložených hashov (staršie riadky) prepíše všetky skupiny.
+     */
+    private boolean update(HumedRawProduct product, HumedProductEncoder.EncodedProduct encoded, long[] storedHashes) {
+        StringJoiner set = new StringJoiner(", ");
+        List<Object> args = new ArrayList<>();
+
+        for (HumedProductEncoder.FieldGroup group : HumedProductEncoder.FieldGroup.values()) {
+            int i = group.ordinal();
+            if (storedHashes != null && i < storedHashes.length && storedHashes[i] == encoded.fieldHashes()[i]) {
+                continue;
+            }
+            for (String column : group.columns()) {
+                set.add(JSONB_COLUMNS.contains(column) ? column + " = ?::jsonb" : column + " = ?");
+                args.add(columnValue(product, encoded, column));
+            }
+        }
+        set.add("checksum = ?");
+        args.add(encoded.checksum());
+        set.add("field_hashes = ?");
+        args.add(encoded.fieldHashes());
+        set.add("updated_at = ?");
+        args.add(Timestamp.from(Instant.now()));
+        args.add(product.getFeedId());
 
         try {
-            int rows = jdbc.update(sql,
-                    product.getSku(),
-                    product.getGtin(),
-                    product.getTitle(),
-                    product.getDescription(),
-                    product.getLink(),
-                    product.getPricePurchase(),
-                    product.getPriceRetail(),
-                    product.getWeightGrams(),
-                    product.getAvailability(),
-                    product.getCondition(),
-                    toJson(product.getCategories()),
-                    toJson(product.getImages()),
-                    toJson(product.getAttributes()),
-                    checksum,
-                    Timestamp.from(Instant.now()),
-                    product.getFeedId()
-            );
+            int rows = jdbc.update("UPDATE staging.humed_raw SET " + set + " WHERE feed_id = ?", args.toArray());
             return rows > 0;
         } catch (Exception e) {
             log.error("Failed to update product {}: {}", product.getFeedId(), e.getMessage());
@@ -153,6 +212,54 @@ public class HumedStagingService {
         }
     }
 
+    private Object columnValue(HumedRawProduct product, HumedProductEncoder.EncodedProduct encoded, String column) {
+        return switch (column) {
+            case "sku" -> product.getSku();
+            case "gtin" -> product.getGtin();
+            case "title" -> product.getTitle();
+            case "description" -> product.getDescription();
+            case "link" -> product.getLink();
+            case "price_purchase" -> product.getPricePurchase();
+            case "price_retail" -> product.getPriceRetail();
+            case "weight_grams" -> product.getWeightGrams();
+            case "availability" -> product.getAvailability();
+            case "condition" -> product.getCondition();
+            case "categories" -> encoded.categoriesJson();
+            case "images" -> encoded.imagesJson();
+            case "attributes" -> encoded.attributesJson();
+            default -> throw new IllegalArgumentException("Unknown column: " + column);
+        };
+    }
+
+    /**
+     * Stored checksum a hashe skupín existujúceho riadku.
+     */
+    private record StoredHashes(String checksum, long[] fieldHashes) {
+    }
+
+    private StoredHashes findStoredHashes(String feedId) {
+        return jdbc.query(
+                "SELECT checksum, field_hashes FROM staging.humed_raw WHERE feed_id = ?",
+                rs -> rs.next() ? new StoredHashes(rs.getString("checksum"), toLongs(rs.getArray("field_hashes"))) : null,
+                feedId
+        );
+    }
+
+    private static long[] toLongs(java.sql.Array array) throws SQLException {
+        if (array == null) {
+            return null;
+        }
+        Object[] values = (Object[]) array.getArray();
+        long[] result = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                return null;
+            }
+            result[i] = ((Number) values[i]).longValue();
+        }
+        return result;
+    }
+
     /**
      * Batch upsert pre viacero produktov.
      * POZOR: Bez @Transactional - každý produkt je samostatná operácia.
@@ -167,22 +274,19 @@ public class HumedStagingService {
 
         for (HumedRawProduct product : products) {
             try {
-                String checksum = computeChecksum(product);
+                HumedProductEncoder.EncodedProduct encoded = encode(product);
+                String checksum = encoded.checksum();
 
-                String existingChecksum = jdbc.query(
-                        "SELECT checksum FROM staging.humed_raw WHERE feed_id = ?",
-                        rs -> rs.next() ? rs.getString("checksum") : null,
-                        product.getFeedId()
-                );
+                StoredHashes stored = findStoredHashes(product.getFeedId());
 
-                if (existingChecksum == null) {
-                    if (insert(product, checksum)) {
+                if (stored == null) {
+                    if (insert(product, encoded)) {
                         inserted++;
                     } else {
                         failed++;
                     }
-                } else if (!checksum.equals(existingChecksum)) {
-                    if (update(product, checksum)) {
+                } else if (!checksum.equals(stored.checksum())) {
+                    if (update(product, encoded, stored.fieldHashes())) {
                         updated++;
                     } else {
                         failed++;
@@ -199,6 +303,478 @@ public class HumedStagingService {
         return new UpsertResult(inserted, updated, unchanged, failed);
     }
 
+    /**
+     * Set-based upsert celej dávky príkazmi INSERT ... ON CONFLICT.
+     * Nezmenené produkty (rovnaký checksum) sa neprepisujú a nevrátia sa v RETURNING.
+     *
+     * Jeden príkaz má najviac {@link #MAX_ROWS_PER_STATEMENT} riadkov (limit bind parametrov
+     * protokolu), väčšia dávka sa rozdelí. Opakovaný feed_id v dávke ide do ďalšieho kola
+     * a kolá sa zapisujú za sebou - počty sú rovnaké ako pri {@link #upsertBatch} po riadkoch.
+     * Ak príkaz zlyhá (napr. konflikt na sku), jeho riadky sa spracujú po jednom produkte.
+     */
+    public UpsertResult upsertBatchBulk(List<HumedRawProduct> products) {
+        if (products.isEmpty()) {
+            return new UpsertResult(0, 0, 0, 0);
+        }
+
+        // ON CONFLICT nedovolí zmeniť ten istý riadok dvakrát v jednom príkaze
+        List<List<HumedRawProduct>> rounds = new ArrayList<>();
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (HumedRawProduct product : products) {
+            int round = occurrences.merge(product.getFeedId(), 1, Integer::sum) - 1;
+            if (round == rounds.size()) {
+                rounds.add(new ArrayList<>());
+            }
+            rounds.get(round).add(product);
+        }
+
+        int[] totals = {0, 0, 0, 0}; // inserted, updated, unchanged, failed
+        for (List<HumedRawProduct> round : rounds) {
+            for (int from = 0; from < round.size(); from += MAX_ROWS_PER_STATEMENT) {
+                UpsertResult result = upsertStatement(
+                        round.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, round.size())));
+                totals[0] += result.inserted();
+                totals[1] += result.updated();
+                totals[2] += result.unchanged();
+                totals[3] += result.failed();
+            }
+        }
+        return new UpsertResult(totals[0], totals[1], totals[2], totals[3]);
+    }
+
+    /**
+     * Jeden INSERT ... ON CONFLICT pre produkty s rôznymi feed_id.
+     */
+    private UpsertResult upsertStatement(List<HumedRawProduct> products) {
+        StringJoiner values = new StringJoiner(",\n");
+        List<Object> args = new ArrayList<>(products.size() * PARAMETERS_PER_ROW);
+        Timestamp now = Timestamp.from(Instant.now());
+
+        for (HumedRawProduct product : products) {
+            HumedProductEncoder.EncodedProduct encoded = encode(product);
+            values.add("(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?::jsonb, ?::jsonb, ?::jsonb, ?, ?, ?, ?)");
+            args.add(product.getFeedId());
+            args.add(product.getSku());
+            args.add(product.getGtin());
+            args.add(product.getTitle());
+            args.add(product.getDescription());
+            args.add(product.getLink());
+            args.add(product.getPricePurchase());
+            args.add(product.getPriceRetail());
+            args.add(product.getWeightGrams());
+            args.add(product.getAvailability());
+            args.add(product.getCondition());
+            args.add(encoded.categoriesJson());
+            args.add(encoded.imagesJson());
+            args.add(encoded.attributesJson());
+            args.add(encoded.checksum());
+            args.add(encoded.fieldHashes());
+            args.add(now);
+            args.add(now);
+        }
+
+        String sql = """
+            INSERT INTO staging.humed_raw (
+                feed_id, sku, gtin, title, description, link,
+                price_purchase, price_retail, weight_grams,
+                availability, condition,
+                categories, images, attributes,
+                checksum, field_hashes, imported_at, updated_at
+            ) VALUES
+            """ + values + "\n" + ON_CONFLICT_UPDATE_CHANGED;
+
+        try {
+            int[] counts = jdbc.query(sql, rs -> {
+                int[] c = {0, 0}; // inserted, updated
+                while (rs.next()) {
+                    c[rs.getBoolean("inserted") ? 0 : 1]++;
+                }
+                return c;
+            }, args.toArray());
+
+            int unchanged = products.size() - counts[0] - counts[1];
+            return new UpsertResult(counts[0], counts[1], unchanged, 0);
+
+        } catch (DataAccessException e) {
+            log.warn("Bulk upsert of {} products failed, falling back to per-row upsert: {}",
+                    products.size(), e.getMessage());
+            return batchTx.execute(status -> upsertBatch(products));
+        }
+    }
+
+    /**
+     * Načíta všetky páry (feed_id, checksum) jedným streamovaným dotazom do pamäťového indexu.
+     * Read-only transakcia je potrebná, aby PostgreSQL driver použil kurzor s fetch size.
+     */
+    @Transactional(readOnly = true)
+    public HumedChecksumIndex loadChecksumIndex() {
+        Integer count = jdbc.queryForObject("SELECT COUNT(*) FROM staging.humed_raw", Integer.class);
+        HumedChecksumIndex index = new HumedChecksumIndex(count != null ? count : 0);
+
+        jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT feed_id, checksum FROM staging.humed_raw WHERE checksum IS NOT NULL");
+            ps.setFetchSize(10_000);
+            return ps;
+        }, (RowCallbackHandler) rs -> index.put(rs.getString(1), rs.getString(2)));
+
+        log.info("Loaded checksum index with {} products", index.size());
+        return index;
+    }
+
+    /**
+     * Prepočíta uložené checksumy aktuálnym algoritmom (migrácia po zmene etl.humed.checksum-algorithm)
+     * a doplní hashe skupín polí (field_hashes).
+     * Produkty sa rekonštruujú zo stĺpcov staging tabuľky, takže to funguje len pre kanonický
+     * formát MURMUR3 - pôvodný SHA-256 závisí od poradia atribútov a škály cien vo feede.
+     *
+     * @return počet riadkov so zmeneným checksumom
+     */
+    @Transactional
+    public int rehashChecksums() {
+        if (encoder.getAlgorithm() != HumedProductEncoder.ChecksumAlgorithm.MURMUR3) {
+            throw new IllegalStateException(
+                    "Rehash is supported only for checksum-algorithm=murmur3, current: " + encoder.getAlgorithm());
+        }
+
+        String updateSql = """
+            UPDATE staging.humed_raw SET checksum = ?, field_hashes = ?
+            WHERE feed_id = ? AND (checksum IS DISTINCT FROM ? OR field_hashes IS DISTINCT FROM ?)
+            """;
+        List<Object[]> pending = new ArrayList<>(REHASH_BATCH_SIZE);
+        int[] counts = {0, 0}; // scanned, changed
+
+        jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement("""
+                SELECT feed_id, sku, gtin, title, description, link, price_purchase, price_retail,
+                       weight_grams, availability, condition, categories, images, attributes
+                FROM staging.humed_raw
+                """);
+            ps.setFetchSize(10_000);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            HumedProductEncoder.EncodedProduct encoded = encoder.encode(fromRow(rs));
+            pending.add(new Object[]{encoded.checksum(), encoded.fieldHashes(), rs.getString("feed_id"),
+                    encoded.checksum(), encoded.fieldHashes()});
+            counts[0]++;
+            if (pending.size() >= REHASH_BATCH_SIZE) {
+                counts[1] += flushRehash(updateSql, pending);
+            }
+        });
+        counts[1] += flushRehash(updateSql, pending);
+
+        log.info("Rehashed {} staging products, {} checksums changed", counts[0], counts[1]);
+        return counts[1];
+    }
+
+    private int flushRehash(String sql, List<Object[]> pending) {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        int changed = 0;
+        for (int rows : jdbc.batchUpdate(sql, pending)) {
+            changed += Math.max(rows, 0);
+        }
+        pending.clear();
+        return changed;
+    }
+
+    /**
+     * Zrekonštruuje produkt z riadku staging tabuľky (polia, ktoré vstupujú do checksumu a field_hashes).
+     */
+    private HumedRawProduct fromRow(ResultSet rs) throws SQLException {
+        HumedRawProduct product = new HumedRawProduct();
+        product.setFeedId(rs.getString("feed_id"));
+        product.setSku(rs.getString("sku"));
+        product.setGtin(rs.getString("gtin"));
+        product.setTitle(rs.getString("title"));
+        product.setDescription(rs.getString("description"));
+        product.setLink(rs.getString("link"));
+        product.setPricePurchase(rs.getBigDecimal("price_purchase"));
+        product.setPriceRetail(rs.getBigDecimal("price_retail"));
+        int weight = rs.getInt("weight_grams");
+        product.setWeightGrams(rs.wasNull() ? null : weight);
+        product.setAvailability(rs.getString("availability"));
+        product.setCondition(rs.getString("condition"));
+        try {
+            product.setCategories(readJson(rs.getString("categories"), new TypeReference<>() {}));
+            product.setImages(readJson(rs.getString("images"), new TypeReference<>() {}));
+            product.setAttributes(readJson(rs.getString("attributes"), new TypeReference<>() {}));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid JSON in staging product " + product.getFeedId(), e);
+        }
+        return product;
+    }
+
+    private <T> T readJson(String json, TypeReference<T> type) throws IOException {
+        return json != null ? objectMapper.readValue(json, type) : null;
+    }
+
+    /**
+     * Zistí, či je staging tabuľka prázdna (prvý import).
+     */
+    public boolean isStagingEmpty() {
+        Boolean exists = jdbc.queryForObject("SELECT EXISTS (SELECT 1 FROM staging.humed_raw)", Boolean.class);
+        return !Boolean.TRUE.equals(exists);
+    }
+
+    /**
+     * Načíta produkty cez COPY ... FROM STDIN do dočasnej tabuľky a zlúči ich
+     * do staging.humed_raw jedným INSERT ... SELECT ... ON CONFLICT.
+     * Určené pre prvý import a plné reloady - celé načítanie je jedna transakcia.
+     *
+     * Jeden zlý riadok nesmie zhodiť celý merge, preto sa pred ním z dočasnej tabuľky
+     * odstránia riadky bez feed_id / sku / title (NOT NULL) a riadky, ktorých sku už patrí inému feed_id
+     * (skorší vo feede alebo v staging). Rátajú sa ako failed - rovnako ako pri zápise po riadkoch.
+     * Opakovaný feed_id sa zlúči na posledný výskyt a zvyšné výskyty sú unchanged.
+     *
+     * @param source zdroj produktov, napr. {@code sink -> parser.parse(feedPath, sink)}
+     */
+    @Transactional
+    public UpsertResult copyLoad(Consumer<Consumer<HumedRawProduct>> source) {
+        jdbc.execute("""
+            CREATE TEMP TABLE humed_raw_load (
+                ord            INTEGER,
+                feed_id        TEXT,
+                sku            TEXT,
+                gtin           TEXT,
+                title          TEXT,
+                description    TEXT,
+                link           TEXT,
+                price_purchase NUMERIC,
+                price_retail   NUMERIC,
+                weight_grams   INTEGER,
+                availability   TEXT,
+                condition      TEXT,
+                categories     JSONB,
+                images         JSONB,
+                attributes     JSONB,
+                checksum       TEXT,
+                field_hashes   BIGINT[]
+            ) ON COMMIT DROP
+            """);
+
+        String copySql = """
+            COPY humed_raw_load (
+                ord, feed_id, sku, gtin, title, description, link,
+                price_purchase, price_retail, weight_grams, availability, condition,
+                categories, images, attributes, checksum, field_hashes
+            ) FROM STDIN WITH (FORMAT csv)
+            """;
+
+        Connection connection = DataSourceUtils.getConnection(jdbc.getDataSource());
+        int loaded;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new PGCopyOutputStream(connection.unwrap(PGConnection.class), copySql, 1 << 16),
+                StandardCharsets.UTF_8))) {
+
+            int[] ord = {0};
+            source.accept(product -> {
+                try {
+                    writeCsvRow(writer, ord[0]++, product);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            loaded = ord[0];
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException("COPY into humed_raw_load failed", e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, jdbc.getDataSource());
+        }
+
+        log.info("COPY loaded {} products into temp table, merging into staging", loaded);
+
+        // Autovacuum dočasné tabuľky neanalyzuje - bez štatistík by plánovač odhadol pár riadkov
+        jdbc.execute("ANALYZE humed_raw_load");
+
+        int failed = jdbc.update("DELETE FROM humed_raw_load WHERE feed_id IS NULL OR sku IS NULL OR title IS NULL");
+
+        // ON CONFLICT nedovolí zmeniť ten istý riadok dvakrát - platí posledný výskyt feed_id
+        jdbc.update("""
+            DELETE FROM humed_raw_load l
+            WHERE EXISTS (SELECT 1 FROM humed_raw_load newer WHERE newer.feed_id = l.feed_id AND newer.ord > l.ord)
+            """);
+
+        // Konflikt na humed_raw_sku_uk - sku patrí skoršiemu produktu feedu alebo inému feed_id v staging
+        failed += jdbc.update("""
+            DELETE FROM humed_raw_load l
+            WHERE EXISTS (SELECT 1 FROM humed_raw_load earlier WHERE earlier.sku = l.sku AND earlier.ord < l.ord)
+               OR EXISTS (SELECT 1 FROM staging.humed_raw hr WHERE hr.sku = l.sku AND hr.feed_id <> l.feed_id)
+            """);
+        if (failed > 0) {
+            log.warn("Skipped {} HUMED products without feed_id / sku / title or with a conflicting sku", failed);
+        }
+
+        String mergeSql = """
+            INSERT INTO staging.humed_raw (
+                feed_id, sku, gtin, title, description, link,
+                price_purchase, price_retail, weight_grams,
+                availability, condition,
+                categories, images, attributes,
+                checksum, field_hashes, imported_at, updated_at
+            )
+            SELECT
+                feed_id, sku, gtin, title, description, link,
+                price_purchase, price_retail, weight_grams,
+                availability, condition,
+                categories, images, attributes,
+                checksum, field_hashes, NOW(), NOW()
+            FROM humed_raw_load
+            """ + ON_CONFLICT_UPDATE_CHANGED;
+
+        int[] counts = jdbc.query(mergeSql, rs -> {
+            int[] c = {0, 0}; // inserted, updated
+            while (rs.next()) {
+                c[rs.getBoolean("inserted") ? 0 : 1]++;
+            }
+            return c;
+        });
+
+        return new UpsertResult(counts[0], counts[1], loaded - counts[0] - counts[1] - failed, failed);
+    }
+
+    /**
+     * Zapíše produkt ako CSV riadok pre COPY. NULL = prázdne pole bez úvodzoviek.
+     */
+    private void writeCsvRow(Writer w, int ord, HumedRawProduct product) throws IOException {
+        HumedProductEncoder.EncodedProduct encoded = encode(product);
+        w.write(Integer.toString(ord));
+        writeCsvField(w, product.getFeedId());
+        writeCsvField(w, product.getSku());
+        writeCsvField(w, product.getGtin());
+        writeCsvField(w, product.getTitle());
+        writeCsvField(w, product.getDescription());
+        writeCsvField(w, product.getLink());
+        writeCsvField(w, product.getPricePurchase() != null ? product.getPricePurchase().toPlainString() : null);
+        writeCsvField(w, product.getPriceRetail() != null ? product.getPriceRetail().toPlainString() : null);
+        writeCsvField(w, product.getWeightGrams() != null ? product.getWeightGrams().toString() : null);
+        writeCsvField(w, product.getAvailability());
+        writeCsvField(w, product.getCondition());
+        writeCsvField(w, encoded.categoriesJson());
+        writeCsvField(w, encoded.imagesJson());
+        writeCsvField(w, encoded.attributesJson());
+        writeCsvField(w, encoded.checksum());
+        writeCsvField(w, toArrayLiteral(encoded.fieldHashes()));
+        w.write('\n');
+    }
+
+    private static String toArrayLiteral(long[] values) {
+        StringJoiner literal = new StringJoiner(",", "{", "}");
+        for (long value : values) {
+            literal.add(Long.toString(value));
+        }
+        return literal.toString();
+    }
+
+    private void writeCsvField(Writer w, String value) throws IOException {
+        w.write(',');
+        if (value == null) {
+            return;
+        }
+        w.write('"');
+        if (value.indexOf('"') >= 0) {
+            w.write(value.replace("\"", "\"\""));
+        } else {
+            w.write(value);
+        }
+        w.write('"');
+    }
+
+    /**
+     * Výsledok porovnania staging s aktuálnym feedom.
+     */
+    public record ReconcileResult(int revived, int missing, int sourcesDeactivated, int productsDeactivated) {
+    }
+
+    /**
+     * Zosúladí staging s množinou feed_id z aktuálneho feedu - set-based, bez dotazu na každý riadok:
+     * - produkty, ktoré sa vo feede znovu objavili, oživí (missing_since = NULL, zdroj a produkt aktívne)
+     * - produkty, ktoré vo feede chýbajú, označí missing_since a deaktivuje ich HUMED zdroj
+     *   v catalog.product_sources a produkt v catalog.products, ak nemá iný aktívny zdroj
+     *
+     * Ak by chýbalo viac ako {@code maxMissingRatio} aktívnych produktov (neúplný feed),
+     * nič sa nedeaktivuje.
+     */
+    @Transactional
+    public ReconcileResult reconcileWithFeed(HumedSeenIds seen, double maxMissingRatio) {
+        String[] feedIds = seen.toArray();
+
+        // Data-modifying CTE sa vykonajú aj bez odkazu vo výslednom SELECT
+        Integer revived = jdbc.queryForObject("""
+            WITH back AS (
+                UPDATE staging.humed_raw SET missing_since = NULL
+                WHERE missing_since IS NOT NULL AND feed_id = ANY(?::text[])
+                RETURNING feed_id
+            ),
+            sources AS (
+                UPDATE catalog.product_sources ps SET is_active = true
+                FROM back
+                WHERE ps.source = 'humed' AND ps.source_id = back.feed_id AND ps.is_active = false
+                RETURNING ps.product_id
+            ),
+            products AS (
+                UPDATE catalog.products p SET is_active = true
+                WHERE p.id IN (SELECT product_id FROM sources) AND p.is_active = false
+                RETURNING p.id
+            )
+            SELECT COUNT(*) FROM back
+            """, Integer.class, (Object) feedIds);
+
+        int[] counts = jdbc.queryForObject("""
+            SELECT COUNT(*) FILTER (WHERE NOT EXISTS (
+                       SELECT 1 FROM unnest(?::text[]) AS seen(feed_id) WHERE seen.feed_id = hr.feed_id)),
+                   COUNT(*)
+            FROM staging.humed_raw hr
+            WHERE hr.missing_since IS NULL
+            """, (rs, rowNum) -> new int[]{rs.getInt(1), rs.getInt(2)}, (Object) feedIds);
+
+        int missing = counts[0];
+        int active = counts[1];
+        if (missing == 0) {
+            return new ReconcileResult(revived, 0, 0, 0);
+        }
+        if (missing > active * maxMissingRatio) {
+            log.warn("{} of {} staged HUMED products missing from feed (limit {}%), skipping deactivation",
+                    missing, active, Math.round(maxMissingRatio * 100));
+            return new ReconcileResult(revived, 0, 0, 0);
+        }
+
+        // Data-modifying CTE vidia snapshot pred zmenou - práve deaktivované zdroje sa vylúčia explicitne
+        int[] deactivated = jdbc.queryForObject("""
+            WITH seen AS (
+                SELECT unnest(?::text[]) AS feed_id
+            ),
+            gone AS (
+                UPDATE staging.humed_raw hr SET missing_since = NOW()
+                WHERE hr.missing_since IS NULL
+                  AND NOT EXISTS (SELECT 1 FROM seen WHERE seen.feed_id = hr.feed_id)
+                RETURNING hr.feed_id
+            ),
+            sources AS (
+                UPDATE catalog.product_sources ps SET is_active = false
+                FROM gone
+                WHERE ps.source = 'humed' AND ps.source_id = gone.feed_id AND ps.is_active IS DISTINCT FROM false
+                RETURNING ps.id, ps.product_id
+            ),
+            products AS (
+                UPDATE catalog.products p SET is_active = false
+                WHERE p.id IN (SELECT product_id FROM sources)
+                  AND p.is_active IS DISTINCT FROM false
+                  AND NOT EXISTS (
+                      SELECT 1 FROM catalog.product_sources other
+                      WHERE other.product_id = p.id
+                        AND other.is_active IS DISTINCT FROM false
+                        AND other.id NOT IN (SELECT id FROM sources)
+                  )
+                RETURNING p.id
+            )
+            SELECT (SELECT COUNT(*) FROM gone), (SELECT COUNT(*) FROM sources), (SELECT COUNT(*) FROM products)
+            """, (rs, rowNum) -> new int[]{rs.getInt(1), rs.getInt(2), rs.getInt(3)}, (Object) feedIds);
+
+        return new ReconcileResult(revived, deactivated[0], deactivated[1], deactivated[2]);
+    }
+
     /**
      * Vytvorí sync log záznam.
      */
@@ -220,8 +796,19 @@ public class HumedStagingService {
      * Aktualizuje sync log po dokončení.
      */
     public void completeSyncLog(long syncLogId, UpsertResult result, String feedChecksum, String error) {
-        String status = error == null ? "success" : "failed";
+        finishSyncLog(syncLogId, error == null ? "success" : "failed", result, feedChecksum, error);
+    }
+
+    /**
+     * Ukončí sync log úspešného replayu so stavom 'replay'. findLastSuccessfulSync ho ignoruje -
+     * ďalší sync porovnáva validátory a checksum s posledným skutočne stiahnutým feedom.
+     */
+    public void completeReplayLog(long syncLogId, UpsertResult result, String feedChecksum) {
+        finishSyncLog(syncLogId, "replay", result, feedChecksum, null);
+    }
 
+    private void finishSyncLog(long syncLogId, String status, UpsertResult result, String feedChecksum,
+                               String error) {
         jdbc.update("""
             UPDATE staging.humed_sync_log SET
                 finished_at = NOW(),
@@ -231,7 +818,7 @@ public class HumedStagingService {
                 products_updated = ?,
                 products_unchanged = ?,
                 error_message = ?,
-                feed_checksum = ?
+                feed_checksum = COALESCE(?, feed_checksum)
             WHERE id = ?
             """,
                 status,
@@ -246,40 +833,109 @@ public class HumedStagingService {
     }
 
     /**
-     * Vypočíta SHA-256 checksum pre detekciu zmien.
+     * Posledný úspešný (alebo nezmenený) sync - checksum a HTTP validátory feedu.
      */
-    private String computeChecksum(HumedRawProduct product) {
-        try {
-            String data = String.join("|",
-                    nullSafe(product.getSku()),
-                    nullSafe(product.getTitle()),
-                    nullSafe(product.getDescription()),
-                    product.getPricePurchase() != null ? product.getPricePurchase().toPlainString() : "",
-                    product.getPriceRetail() != null ? product.getPriceRetail().toPlainString() : "",
-                    product.getWeightGrams() != null ? product.getWeightGrams().toString() : "",
-                    nullSafe(product.getAvailability()),
-                    toJson(product.getCategories()),
-                    toJson(product.getImages()),
-                    toJson(product.getAttributes())
-            );
+    public record LastSync(String feedChecksum, String etag, String lastModified) {
+    }
 
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data.getBytes(StandardCharsets.UTF_8));
-            return HexFormat.of().formatHex(hash);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to compute checksum", e);
-        }
+    /**
+     * Nájde posledný úspešný sync pre porovnanie feedu.
+     */
+    public Optional<LastSync> findLastSuccessfulSync() {
+        return jdbc.query("""
+            SELECT feed_checksum, http_etag, http_last_modified
+            FROM staging.humed_sync_log
+            WHERE status IN ('success', 'unchanged')
+            ORDER BY id DESC
+            LIMIT 1
+            """,
+                rs -> rs.next()
+                        ? Optional.of(new LastSync(
+                                rs.getString("feed_checksum"),
+                                rs.getString("http_etag"),
+                                rs.getString("http_last_modified")))
+                        : Optional.empty()
+        );
     }
 
-    private String toJson(Object obj) {
-        try {
-            return objectMapper.writeValueAsString(obj);
-        } catch (JsonProcessingException e) {
-            return "[]";
-        }
+    /**
+     * Uloží HTTP validátory (ETag, Last-Modified) stiahnutého feedu.
+     */
+    public void saveHttpValidators(long syncLogId, String etag, String lastModified) {
+        jdbc.update("UPDATE staging.humed_sync_log SET http_etag = ?, http_last_modified = ? WHERE id = ?",
+                etag, lastModified, syncLogId);
+    }
+
+    /**
+     * Uloží checkpoint - počet produktov feedu, ktoré sú v staging zapísané.
+     */
+    public void saveCheckpoint(long syncLogId, String feedChecksum, long committedItems) {
+        jdbc.update("""
+            UPDATE staging.humed_sync_log SET
+                feed_checksum = ?,
+                checkpoint_item = ?,
+                checkpoint_at = NOW()
+            WHERE id = ?
+            """,
+                feedChecksum,
+                committedItems,
+                syncLogId
+        );
     }
 
-    private String nullSafe(String s) {
-        return s != null ? s : "";
+    /**
+     * Nájde checkpoint prerušeného behu (failed, alebo 'running' po páde procesu)
+     * nad rovnakým feedom, ktorý nasleduje po poslednom úspešnom syncu.
+     */
+    public Optional<Long> findResumableCheckpoint(String feedChecksum) {
+        return jdbc.query("""
+            SELECT checkpoint_item
+            FROM staging.humed_sync_log
+            WHERE feed_checksum = ?
+              AND status IN ('failed', 'running')
+              AND checkpoint_item > 0
+              AND id > COALESCE((
+                  SELECT MAX(id) FROM staging.humed_sync_log WHERE status IN ('success', 'unchanged')
+              ), 0)
+            ORDER BY id DESC
+            LIMIT 1
+            """,
+                rs -> rs.next() ? Optional.of(rs.getLong("checkpoint_item")) : Optional.empty(),
+                feedChecksum
+        );
+    }
+
+    /**
+     * Ukončí sync log so stavom 'unchanged' - feed sa od posledného behu nezmenil.
+     */
+    public void completeSyncLogUnchanged(long syncLogId, String feedChecksum) {
+        jdbc.update("""
+            UPDATE staging.humed_sync_log SET
+                finished_at = NOW(),
+                status = 'unchanged',
+                feed_checksum = ?
+            WHERE id = ?
+            """,
+                feedChecksum,
+                syncLogId
+        );
+    }
+
+    /**
+     * Zakóduje produkt a výsledok si uloží na produkt - checksum pre detekciu zmien
+     * (etl.humed.checksum-index) a zápis zmeneného produktu tak zdieľajú jednu serializáciu.
+     */
+    String encodeChecksum(HumedRawProduct product) {
+        HumedProductEncoder.EncodedProduct encoded = encoder.encode(product);
+        product.encoded(encoded);
+        return encoded.checksum();
+    }
+
+    /**
+     * Zakódovaný produkt - z {@link #encodeChecksum}, ak už prebehol, inak nové kódovanie.
+     */
+    private HumedProductEncoder.EncodedProduct encode(HumedRawProduct product) {
+        HumedProductEncoder.EncodedProduct encoded = product.encoded();
+        return encoded != null ? encoded : encoder.encode(product);
     }
 }
@@ -3,9 +3,12 @@ package sk.pcola.etl.staging.humed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import sk.pcola.etl.common.util.TeeInputStream;
 import sk.pcola.etl.config.HumedConfig;
 
+import java.io.BufferedOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -13,18 +16,26 @@ import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.time.Duration;
-import java.util.ArrayList;
 import java.util.HexFormat;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Orchestrácia HUMED sync procesu:
- * 1. Stiahnutie feedu (HTTP alebo lokálny súbor)
- * 2. Parsovanie XML
- * 3. Upsert do staging tabuľky
- * 4. Logovanie výsledku
+ * 1. Stiahnutie feedu (HTTP alebo lokálny súbor), podmienený GET
+ * 2. Porovnanie checksumu s posledným úspešným behom - nezmenený feed sa nespracúva
+ * 3. Parsovanie XML - pri streamovanom sťahovaní súčasne s 1.
+ * 4. Upsert do staging tabuľky
+ * 5. Logovanie výsledku, archivácia feedu (etl.humed.archive-dir)
+ *
+ * Replay ({@link #replay(Path)}) spracuje archivovaný snapshot bez sťahovania a bez
+ * preskakovania nezmeneného feedu - pre záťažové testy a reprodukciu starších behov.
+ * Replay nedeaktivuje produkty chýbajúce v snapshote a jeho log má stav 'replay'.
  */
 @Service
 public class HumedSyncJob {
@@ -34,11 +45,14 @@ public class HumedSyncJob {
     private final HumedConfig config;
     private final HumedXmlParser parser;
     private final HumedStagingService stagingService;
+    private final HumedFeedArchive archive;
 
-    public HumedSyncJob(HumedConfig config, HumedXmlParser parser, HumedStagingService stagingService) {
+    public HumedSyncJob(HumedConfig config, HumedXmlParser parser, HumedStagingService stagingService,
+                        HumedFeedArchive archive) {
         this.config = config;
         this.parser = parser;
         this.stagingService = stagingService;
+        this.archive = archive;
     }
 
     /**
@@ -51,23 +65,61 @@ public class HumedSyncJob {
         }
 
         log.info("Starting HUMED sync job");
+        HumedStagingService.LastSync lastSync = stagingService.findLastSuccessfulSync().orElse(null);
         long syncLogId = stagingService.createSyncLog();
 
         try {
-            // 1. Získaj feed
-            Path feedPath = getFeed();
-            String feedChecksum = computeFileChecksum(feedPath);
-
-            // 2. Parsuj a ukladaj v dávkach
-            HumedStagingService.UpsertResult result = parseAndStore(feedPath);
+            HumedStagingService.UpsertResult result;
+            String feedChecksum;
+
+            Path localFeed = findLocalFeed();
+            if (localFeed == null && hasFeedUrl()) {
+                // 1. Podmienený GET - 304 znamená, že feed sa nezmenil
+                HttpResponse<InputStream> response = openFeed(config.getFeedUrl(), lastSync);
+                if (response.statusCode() == 304) {
+                    response.body().close();
+                    log.info("HUMED feed not modified (HTTP 304)");
+                    // Validátory sa prenesú z posledného behu, aby ďalší podmienený GET mal s čím porovnávať
+                    stagingService.saveHttpValidators(syncLogId, lastSync.etag(), lastSync.lastModified());
+                    return completeUnchanged(syncLogId, lastSync);
+                }
+                if (response.statusCode() != 200) {
+                    response.body().close();
+                    throw new RuntimeException("Failed to download feed. HTTP status: " + response.statusCode());
+                }
+                stagingService.saveHttpValidators(syncLogId,
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null));
+
+                if (config.isStreamingDownload()) {
+                    // 1+2. Uloženie na disk, checksum a parsovanie v jednom prechode
+                    StreamedFeed streamed = streamAndStore(response, config.getFeedPath(), syncLogId);
+                    result = streamed.result();
+                    feedChecksum = streamed.checksum();
+                    stagingService.completeSyncLog(syncLogId, result, feedChecksum, null);
+                    archive.archive(streamed.file(), feedChecksum);
+                    return logCompleted(result);
+                }
+                localFeed = saveFeed(response, config.getFeedPath());
+            } else if (localFeed == null) {
+                throw new IllegalStateException("No feed source configured (URL or path)");
+            }
 
-            // 3. Zaloguj úspech
-            stagingService.completeSyncLog(syncLogId, result, feedChecksum, null);
+            // 2. Checksum - rovnaký feed ako pri poslednom úspešnom behu sa nespracúva
+            Path feedPath = localFeed;
+            feedChecksum = computeFileChecksum(feedPath);
+            if (lastSync != null && feedChecksum != null && feedChecksum.equals(lastSync.feedChecksum())) {
+                log.info("HUMED feed checksum unchanged since last sync, skipping");
+                return completeUnchanged(syncLogId, lastSync);
+            }
 
-            log.info("HUMED sync completed. Inserted: {}, Updated: {}, Unchanged: {}, Failed: {}",
-                    result.inserted(), result.updated(), result.unchanged(), result.failed());
+            // 3. Parsuj a ukladaj - pri rovnakom feede pokračuj od checkpointu prerušeného behu
+            result = store(sink -> parseFile(feedPath, sink), syncLogId, feedChecksum, true);
 
-            return result;
+            // 4. Zaloguj úspech
+            stagingService.completeSyncLog(syncLogId, result, feedChecksum, null);
+            archive.archive(feedPath, feedChecksum);
+            return logCompleted(result);
 
         } catch (Exception e) {
             log.error("HUMED sync failed: {}", e.getMessage(), e);
@@ -77,13 +129,70 @@ public class HumedSyncJob {
     }
 
     /**
-     * Získa feed - stiahne z URL alebo použije lokálny súbor.
+     * Spracuje archivovaný snapshot feedu (.xml.gz alebo .xml) rovnako ako sync lokálneho súboru.
+     * Nesťahuje, nearchivuje a nepreskakuje feed s checksumom posledného behu.
+     *
+     * Historický snapshot nie je aktuálny stav dodávateľa - produkty, ktoré v ňom chýbajú,
+     * sa nedeaktivujú. Beh sa zaloguje so stavom 'replay', takže ďalší sync neprevezme
+     * jeho checksum (a chýbajúce HTTP validátory) ako posledný úspešný beh.
      */
-    private Path getFeed() throws Exception {
-        String feedUrl = config.getFeedUrl();
-        String feedPath = config.getFeedPath();
+    public HumedStagingService.UpsertResult replay(Path snapshot) {
+        log.info("Replaying HUMED feed snapshot: {}", snapshot);
+        long syncLogId = stagingService.createSyncLog();
+        Path extracted = null;
+
+        try {
+            extracted = archive.extract(snapshot);
+            Path feedPath = extracted;
+            String feedChecksum = computeFileChecksum(feedPath);
+
+            HumedStagingService.UpsertResult result =
+                    store(sink -> parseFile(feedPath, sink), syncLogId, feedChecksum, false);
+
+            stagingService.completeReplayLog(syncLogId, result, feedChecksum);
+            return logCompleted(result);
+
+        } catch (Exception e) {
+            log.error("HUMED replay failed: {}", e.getMessage(), e);
+            stagingService.completeSyncLog(syncLogId, null, null, e.getMessage());
+            throw new RuntimeException("HUMED replay failed", e);
+        } finally {
+            if (extracted != null) {
+                try {
+                    Files.deleteIfExists(extracted);
+                } catch (Exception e) {
+                    log.warn("Failed to delete replay file {}: {}", extracted, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private HumedStagingService.UpsertResult logCompleted(HumedStagingService.UpsertResult result) {
+        log.info("HUMED sync completed. Inserted: {}, Updated: {}, Unchanged: {}, Failed: {}",
+                result.inserted(), result.updated(), result.unchanged(), result.failed());
+        return result;
+    }
+
+    /**
+     * Zaloguje beh ako 'unchanged' s checksumom posledného behu. HTTP validátory sa nemenia -
+     * pri odpovedi 200 s rovnakým obsahom ostanú nové ETag / Last-Modified z odpovede.
+     */
+    private HumedStagingService.UpsertResult completeUnchanged(long syncLogId, HumedStagingService.LastSync lastSync) {
+        stagingService.completeSyncLogUnchanged(syncLogId, lastSync.feedChecksum());
+        return new HumedStagingService.UpsertResult(0, 0, 0, 0);
+    }
 
-        // Ak existuje lokálny súbor, použij ho
+    /**
+     * Výsledok streamovaného syncu - checksum je známy až po dočítaní feedu.
+     */
+    private record StreamedFeed(HumedStagingService.UpsertResult result, String checksum, Path file) {
+    }
+
+    /**
+     * Ak existuje lokálny súbor feedu, vráti ho.
+     */
+    private Path findLocalFeed() {
+        String feedPath = config.getFeedPath();
         if (feedPath != null && !feedPath.isBlank()) {
             Path localPath = Path.of(feedPath);
             if (Files.exists(localPath)) {
@@ -91,39 +200,89 @@ public class HumedSyncJob {
                 return localPath;
             }
         }
+        return null;
+    }
 
-        // Inak stiahni z URL
-        if (feedUrl != null && !feedUrl.isBlank()) {
-            return downloadFeed(feedUrl, feedPath);
-        }
-
-        throw new IllegalStateException("No feed source configured (URL or path)");
+    private boolean hasFeedUrl() {
+        return config.getFeedUrl() != null && !config.getFeedUrl().isBlank();
     }
 
     /**
-     * Stiahne feed z URL.
+     * Otvorí HTTP stream feedu. Ak máme validátory z posledného úspešného behu,
+     * pošle If-None-Match / If-Modified-Since.
      */
-    private Path downloadFeed(String url, String targetPath) throws Exception {
+    private HttpResponse<InputStream> openFeed(String url, HumedStagingService.LastSync lastSync) throws Exception {
         log.info("Downloading HUMED feed from: {}", url);
 
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(Duration.ofMinutes(5))
+                .GET();
+
+        if (lastSync != null) {
+            if (lastSync.etag() != null) {
+                request.header("If-None-Match", lastSync.etag());
+            }
+            if (lastSync.lastModified() != null) {
+                request.header("If-Modified-Since", lastSync.lastModified());
+            }
+        }
+
         HttpClient client = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(30))
                 .build();
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .timeout(Duration.ofMinutes(5))
-                .GET()
-                .build();
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
 
-        Path target = targetPath != null ? Path.of(targetPath) : Files.createTempFile("humed_feed_", ".xml");
+    /**
+     * Počas jediného čítania HTTP streamu zapisuje feed na disk,
+     * počíta SHA-256 a parsuje do staging.
+     *
+     * Feed sa zapisuje do dočasného súboru v adresári cieľa a na feed-path sa presunie
+     * až po úspešnom uložení - po chybe nezostane na feed-path neúplný súbor, ktorý by
+     * findLocalFeed používal pri ďalších behoch.
+     */
+    private StreamedFeed streamAndStore(HttpResponse<InputStream> response, String targetPath,
+                                        long syncLogId) throws Exception {
+        Path target = targetPath != null ? Path.of(targetPath).toAbsolutePath() : null;
+        Path tmp = target != null
+                ? Files.createTempFile(target.getParent(), target.getFileName() + ".", ".part")
+                : Files.createTempFile("humed_feed_", ".xml");
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+        HumedStagingService.UpsertResult result;
+        try {
+            try (InputStream body = response.body();
+                 OutputStream file = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16);
+                 InputStream in = new DigestInputStream(new TeeInputStream(body, file), digest)) {
 
-        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                // Checksum ešte nepoznáme - bez checkpointov
+                result = store(sink -> parser.parse(in, sink), syncLogId, null, true);
 
-        if (response.statusCode() != 200) {
-            throw new RuntimeException("Failed to download feed. HTTP status: " + response.statusCode());
+                // Dočítaj zvyšok za koncovým elementom, aby súbor aj checksum boli úplné
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            if (target != null) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                target = tmp;
+            }
+        } catch (Exception e) {
+            Files.deleteIfExists(tmp);
+            throw e;
         }
 
+        log.info("Feed streamed to: {} ({} bytes)", target, Files.size(target));
+        return new StreamedFeed(result, HexFormat.of().formatHex(digest.digest()), target);
+    }
+
+    /**
+     * Uloží telo HTTP odpovede do súboru.
+     */
+    private Path saveFeed(HttpResponse<InputStream> response, String targetPath) throws Exception {
+        Path target = targetPath != null ? Path.of(targetPath) : Files.createTempFile("humed_feed_", ".xml");
+
         try (InputStream is = response.body()) {
             Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING);
         }
@@ -132,55 +291,109 @@ public class HumedSyncJob {
         return target;
     }
 
+    /**
+     * Uloží produkty zo zdroja do staging - COPY pri plnom reloade, inak v dávkach.
+     * Potom deaktivuje produkty, ktoré vo feede chýbajú (etl.humed.tombstone-missing).
+     *
+     * @param feedChecksum checksum feedu pre checkpointy, null ak ešte nie je známy
+     * @param tombstoneMissing deaktivovať chýbajúce produkty - false pre replay historického snapshotu
+     */
+    private HumedStagingService.UpsertResult store(Consumer<Consumer<HumedRawProduct>> source,
+                                                   long syncLogId, String feedChecksum, boolean tombstoneMissing) {
+        // Všetky feed_id z feedu vrátane preskočených (checkpoint, nezmenené) - pre detekciu zmiznutých
+        boolean tombstone = tombstoneMissing && config.isTombstoneMissing();
+        HumedSeenIds seen = new HumedSeenIds();
+        Consumer<Consumer<HumedRawProduct>> tracked = !tombstone ? source : sink -> source.accept(product -> {
+            seen.add(product.getFeedId());
+            sink.accept(product);
+        });
+
+        HumedStagingService.UpsertResult result;
+        if (config.isCopyLoad() || stagingService.isStagingEmpty()) {
+            log.info("Loading HUMED feed via COPY");
+            result = stagingService.copyLoad(tracked);
+        } else {
+            result = parseAndStore(tracked, syncLogId, feedChecksum);
+        }
+
+        if (tombstone && seen.size() > 0) {
+            HumedStagingService.ReconcileResult reconcile =
+                    stagingService.reconcileWithFeed(seen, config.getTombstoneMaxRatio());
+            log.info("HUMED feed reconciled. Missing: {}, Revived: {}, Sources deactivated: {}, Products deactivated: {}",
+                    reconcile.missing(), reconcile.revived(),
+                    reconcile.sourcesDeactivated(), reconcile.productsDeactivated());
+        }
+        return result;
+    }
+
     /**
      * Parsuje feed a ukladá produkty v dávkach.
+     * Pri etl.humed.writer-threads > 0 beží zápis paralelne s parsovaním.
+     * Pri etl.humed.checksum-index sa nezmenené produkty preskočia v pamäti.
+     *
+     * Ak je známy checksum feedu, priebežne ukladá checkpoint (počet zapísaných produktov)
+     * a pri rovnakom feede po prerušenom behu preskočí už zapísaný prefix.
      */
-    private HumedStagingService.UpsertResult parseAndStore(Path feedPath) {
-        final int BATCH_SIZE = 100;
-        List<HumedRawProduct> batch = new ArrayList<>(BATCH_SIZE);
-
-        int totalInserted = 0;
-        int totalUpdated = 0;
-        int totalUnchanged = 0;
-        int totalFailed = 0;
-
-        // Wrapper pre akumuláciu výsledkov v lambda
-        int[] totals = {0, 0, 0, 0}; // inserted, updated, unchanged, failed
-
-        parser.parse(feedPath, product -> {
-            batch.add(product);
-
-            if (batch.size() >= BATCH_SIZE) {
-                HumedStagingService.UpsertResult result = stagingService.upsertBatch(batch);
-                totals[0] += result.inserted();
-                totals[1] += result.updated();
-                totals[2] += result.unchanged();
-                totals[3] += result.failed();
-                batch.clear();
+    private HumedStagingService.UpsertResult parseAndStore(Consumer<Consumer<HumedRawProduct>> source,
+                                                           long syncLogId, String feedChecksum) {
+        Function<List<HumedRawProduct>, HumedStagingService.UpsertResult> batchWriter = config.isBulkUpsert()
+                ? stagingService::upsertBatchBulk
+                : stagingService::upsertBatch;
+
+        Predicate<HumedRawProduct> unchanged = null;
+        if (config.isChecksumIndex()) {
+            HumedChecksumIndex index = stagingService.loadChecksumIndex();
+            unchanged = product -> index.isUnchanged(product.getFeedId(), stagingService.encodeChecksum(product));
+        }
+
+        long resumeFrom = 0;
+        if (feedChecksum != null && config.getCheckpointInterval() > 0) {
+            resumeFrom = stagingService.findResumableCheckpoint(feedChecksum).orElse(0L);
+            if (resumeFrom > 0) {
+                log.info("Resuming interrupted HUMED sync of the same feed from item {}", resumeFrom);
+            }
+        }
+
+        try (HumedUpsertPipeline pipeline = new HumedUpsertPipeline(batchWriter, unchanged,
+                config.getBatchSize(), config.getWriterThreads(), config.getQueueCapacity())) {
+
+            if (feedChecksum != null && config.getCheckpointInterval() > 0) {
+                long offset = resumeFrom;
+                stagingService.saveCheckpoint(syncLogId, feedChecksum, offset);
+                pipeline.onCheckpoint(config.getCheckpointInterval(),
+                        committed -> stagingService.saveCheckpoint(syncLogId, feedChecksum, offset + committed));
             }
-        });
 
-        // Spracuj zvyšok
-        if (!batch.isEmpty()) {
-            HumedStagingService.UpsertResult result = stagingService.upsertBatch(batch);
-            totals[0] += result.inserted();
-            totals[1] += result.updated();
-            totals[2] += result.unchanged();
-            totals[3] += result.failed();
+            long skip = resumeFrom;
+            long[] ordinal = {0};
+            source.accept(product -> {
+                if (ordinal[0]++ >= skip) {
+                    pipeline.accept(product);
+                }
+            });
+            return pipeline.finish();
         }
+    }
 
-        return new HumedStagingService.UpsertResult(totals[0], totals[1], totals[2], totals[3]);
+    /**
+     * Parsuje súbor feedu - pri etl.humed.parse-parallelism > 1 paralelne po shardoch.
+     * Checkpointy a obnova počítajú produkty podľa poradia vo feede, preto ho vtedy zachová vždy.
+     */
+    private void parseFile(Path feedPath, Consumer<HumedRawProduct> sink) {
+        boolean ordered = config.isParseOrdered() || config.getCheckpointInterval() > 0;
+        parser.parseParallel(feedPath, config.getParseParallelism(), ordered, sink);
     }
 
     /**
-     * Vypočíta checksum súboru pre detekciu zmien feedu.
+     * Vypočíta checksum súboru pre detekciu zmien feedu (streamovane, bez načítania celého súboru).
      */
     private String computeFileChecksum(Path path) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] fileBytes = Files.readAllBytes(path);
-            byte[] hash = digest.digest(fileBytes);
-            return HexFormat.of().formatHex(hash);
+            try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            return HexFormat.of().formatHex(digest.digest());
         } catch (Exception e) {
             log.warn("Failed to compute file checksum: {}", e.getMessage());
             return null;
@@ -0,0 +1,240 @@
+package sk.pcola.etl.staging.humed;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Pipeline medzi parserom a zápisom do staging.
+ *
+ * Parser volá {@link #accept(HumedRawProduct)}, produkty sa skladajú do dávok
+ * a dávky idú cez ohraničenú frontu writer vláknam. Plná fronta blokuje parser
+ * (backpressure). Pri {@code writerThreads <= 0} sa dávky zapisujú priamo
+ * na vlákne parsera.
+ *
+ * Výsledky sa sčítavajú podľa poradia dávok - {@link #committedItems()} vracia
+ * počet produktov v súvislom zapísanom prefixe feedu. Voliteľný checkpoint listener
+ * dostane túto hodnotu vždy, keď narastie aspoň o {@code checkpointInterval}.
+ *
+ * Voliteľný filter {@code unchanged} označí produkty, ktoré netreba zapisovať
+ * (napr. podľa {@link HumedChecksumIndex}). Tie sa rátajú ako unchanged a do DB
+ * nejdú, ale v poradí feedu sa započítajú do dávky, za ktorou nasledujú.
+ */
+class HumedUpsertPipeline implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(HumedUpsertPipeline.class);
+
+    private static final Batch POISON = new Batch(-1, List.of(), 0, 0);
+
+    private final Function<List<HumedRawProduct>, HumedStagingService.UpsertResult> batchWriter;
+    private final Predicate<HumedRawProduct> unchanged;
+    private final int batchSize;
+    private final BlockingQueue<Batch> queue;
+    private final ExecutorService writers;
+    private final int writerCount;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private LongConsumer checkpointListener;
+    private long checkpointInterval;
+    private long lastCheckpoint = 0;
+
+    private List<HumedRawProduct> current;
+    private int currentSkipped = 0;
+    private long nextSeq = 0;
+
+    // Poradové účtovanie - chránené zámkom "this"
+    private final Map<Long, Integer> completedOutOfOrder = new HashMap<>();
+    private long nextCommittedSeq = 0;
+    private long committedItems = 0;
+    private final int[] totals = {0, 0, 0, 0}; // inserted, updated, unchanged, failed
+
+    HumedUpsertPipeline(Function<List<HumedRawProduct>, HumedStagingService.UpsertResult> batchWriter,
+                        Predicate<HumedRawProduct> unchanged,
+                        int batchSize, int writerThreads, int queueCapacity) {
+        this.batchWriter = batchWriter;
+        this.unchanged = unchanged;
+        this.batchSize = batchSize;
+        this.current = new ArrayList<>(batchSize);
+        this.writerCount = Math.max(writerThreads, 0);
+
+        if (writerCount > 0) {
+            this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+            AtomicInteger threadNo = new AtomicInteger();
+            this.writers = Executors.newFixedThreadPool(writerCount, r -> {
+                Thread t = new Thread(r, "humed-writer-" + threadNo.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            for (int i = 0; i < writerCount; i++) {
+                writers.execute(this::writerLoop);
+            }
+            log.info("HUMED pipeline started with {} writer threads, queue capacity {}", writerCount, queueCapacity);
+        } else {
+            this.queue = null;
+            this.writers = null;
+        }
+    }
+
+    /**
+     * Nastaví listener, ktorý sa volá s počtom zapísaných produktov (súvislý prefix)
+     * po každých {@code interval} produktoch. Volá sa z writer vlákna.
+     */
+    synchronized void onCheckpoint(long interval, LongConsumer listener) {
+        this.checkpointInterval = interval;
+        this.checkpointListener = listener;
+    }
+
+    /**
+     * Pridá produkt do aktuálnej dávky. Plnú dávku odovzdá writerom.
+     */
+    void accept(HumedRawProduct product) {
+        if (unchanged != null && unchanged.test(product)) {
+            currentSkipped++;
+            return;
+        }
+        current.add(product);
+        if (current.size() >= batchSize) {
+            submitCurrent();
+        }
+    }
+
+    /**
+     * Odošle zvyšok, počká na writerov a vráti súhrnný výsledok.
+     */
+    HumedStagingService.UpsertResult finish() {
+        if (!current.isEmpty() || currentSkipped > 0) {
+            submitCurrent();
+        }
+
+        if (writers != null) {
+            for (int i = 0; i < writerCount; i++) {
+                enqueue(POISON);
+            }
+            writers.shutdown();
+            try {
+                while (!writers.awaitTermination(1, TimeUnit.SECONDS)) {
+                    checkFailure();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for HUMED writers", e);
+            }
+            checkFailure();
+        }
+
+        synchronized (this) {
+            return new HumedStagingService.UpsertResult(totals[0], totals[1], totals[2], totals[3]);
+        }
+    }
+
+    /**
+     * Počet produktov v súvislom prefixe feedu, ktorého všetky dávky sú zapísané.
+     */
+    synchronized long committedItems() {
+        return committedItems;
+    }
+
+    @Override
+    public void close() {
+        if (writers != null) {
+            writers.shutdownNow();
+        }
+    }
+
+    private void submitCurrent() {
+        Batch batch = new Batch(nextSeq++, current, current.size() + currentSkipped, currentSkipped);
+        current = new ArrayList<>(batchSize);
+        currentSkipped = 0;
+
+        if (writers == null) {
+            write(batch);
+        } else {
+            checkFailure();
+            enqueue(batch);
+        }
+    }
+
+    private void enqueue(Batch batch) {
+        try {
+            while (!queue.offer(batch, 1, TimeUnit.SECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing HUMED batch", e);
+        }
+    }
+
+    private void writerLoop() {
+        try {
+            while (true) {
+                Batch batch = queue.take();
+                if (batch == POISON) {
+                    return;
+                }
+                if (failure.get() != null) {
+                    continue; // Drain - parser skončí pri najbližšom checkFailure
+                }
+                write(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            log.error("HUMED writer failed: {}", t.getMessage(), t);
+            failure.compareAndSet(null, t);
+        }
+    }
+
+    private void write(Batch batch) {
+        HumedStagingService.UpsertResult result = batch.products().isEmpty()
+                ? new HumedStagingService.UpsertResult(0, 0, 0, 0)
+                : batchWriter.apply(batch.products());
+        complete(batch, result);
+    }
+
+    private synchronized void complete(Batch batch, HumedStagingService.UpsertResult result) {
+        totals[0] += result.inserted();
+        totals[1] += result.updated();
+        totals[2] += result.unchanged() + batch.skippedUnchanged();
+        totals[3] += result.failed();
+
+        completedOutOfOrder.put(batch.seq(), batch.itemCount());
+        Integer size;
+        while ((size = completedOutOfOrder.remove(nextCommittedSeq)) != null) {
+            committedItems += size;
+            nextCommittedSeq++;
+        }
+
+        if (checkpointListener != null && committedItems - lastCheckpoint >= checkpointInterval) {
+            lastCheckpoint = committedItems;
+            checkpointListener.accept(committedItems);
+        }
+    }
+
+    private void checkFailure() {
+        Throwable t = failure.get();
+        if (t != null) {
+            throw new RuntimeException("HUMED staging writer failed", t);
+        }
+    }
+
+    /**
+     * @param itemCount počet produktov feedu, ktoré dávka pokrýva (zapisované + preskočené)
+     */
+    private record Batch(long seq, List<HumedRawProduct> products, int itemCount, int skippedUnchanged) {
+    }
+}
@@ -0,0 +1,55 @@
+package sk.pcola.etl.staging.humed;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Kanonizácia opakujúcich sa hodnôt počas jedného parsovania feedu.
+ *
+ * Tisíce produktov zdieľajú pár stoviek kategórií a rovnaké názvy atribútov
+ * (Balenie, Paleta), dostupnosť a stav - pool vráti pre rovnakú hodnotu vždy
+ * tú istú inštanciu. HumedCategory je nemenná, zdieľanie je preto bezpečné.
+ *
+ * Pool je thread-safe (zdieľajú ho paralelné shardy jedného parsovania).
+ * Po dosiahnutí limitu sa nové hodnoty už nepridávajú, aby neobvyklý feed
+ * s unikátnymi hodnotami nenafúkol pamäť.
+ */
+final class HumedValuePool {
+
+    private static final int MAX_ENTRIES = 50_000;
+
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<HumedRawProduct.HumedCategory, HumedRawProduct.HumedCategory> categories =
+            new ConcurrentHashMap<>();
+
+    String string(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = strings.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (strings.size() >= MAX_ENTRIES) {
+            return value;
+        }
+        pooled = strings.putIfAbsent(value, value);
+        return pooled != null ? pooled : value;
+    }
+
+    HumedRawProduct.HumedCategory category(String id, String name) {
+        HumedRawProduct.HumedCategory category = new HumedRawProduct.HumedCategory(string(id), string(name));
+        HumedRawProduct.HumedCategory pooled = categories.get(category);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (categories.size() >= MAX_ENTRIES) {
+            return category;
+        }
+        pooled = categories.putIfAbsent(category, category);
+        return pooled != null ? pooled : category;
+    }
+
+    int size() {
+        return strings.size() + categories.size();
+    }
+}
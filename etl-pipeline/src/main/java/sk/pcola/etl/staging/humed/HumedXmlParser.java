@@ -2,24 +2,40 @@ package sk.pcola.etl.staging.humed;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import sk.pcola.etl.config.HumedConfig;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.function.Consumer;
 
 /**
  * StAX parser pre HUMED XML feed.
  * Memory efficient - spracováva produkt po produkte.
  *
+ * StAX implementácia sa volí cez etl.humed.stax-backend, factory sa vytvorí raz
+ * a zdieľa sa medzi všetkými parsovaniami (aj paralelnými shardmi).
+ *
  * POZNÁMKA: Feed je správny UTF-8, nepotrebuje encoding fix.
  * Potrebuje len HTML entity decoding (&gt; -> >).
  */
@@ -30,6 +46,68 @@ public class HumedXmlParser {
 
     private static final String ITEM = "item";
 
+    /**
+     * Max. počet produktov v jednom sharde. Veľkosť shardu nezávisí od veľkosti feedu,
+     * takže okno rozparsovaných shardov drží v pamäti konštantný počet produktov.
+     */
+    private static final int ITEMS_PER_SHARD = 500;
+
+    private static final Map<String, String> BACKENDS = Map.of(
+            "woodstox", "com.ctc.wstx.stax.WstxInputFactory",
+            "aalto", "com.fasterxml.aalto.stax.InputFactoryImpl"
+    );
+
+    private final XMLInputFactory factory;
+
+    /**
+     * Parser s JDK StAX implementáciou.
+     */
+    public HumedXmlParser() {
+        this("jdk");
+    }
+
+    @Autowired
+    public HumedXmlParser(HumedConfig config) {
+        this(config.getStaxBackend());
+    }
+
+    HumedXmlParser(String backend) {
+        this.factory = createFactory(backend);
+        log.info("HUMED parser uses StAX backend: {}", factory.getClass().getName());
+    }
+
+    /**
+     * Vytvorí XMLInputFactory pre backend - "jdk" je vstavaná implementácia
+     * (nie ServiceLoader, ktorý by vybral čokoľvek z classpath), inak alias alebo názov triedy.
+     */
+    static XMLInputFactory createFactory(String backend) {
+        String name = backend == null || backend.isBlank() ? "jdk" : backend.trim();
+        XMLInputFactory factory;
+        if ("jdk".equalsIgnoreCase(name)) {
+            factory = XMLInputFactory.newDefaultFactory();
+        } else {
+            String className = BACKENDS.getOrDefault(name.toLowerCase(), name);
+            try {
+                factory = Class.forName(className)
+                        .asSubclass(XMLInputFactory.class)
+                        .getDeclaredConstructor()
+                        .newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("Unknown StAX backend: " + backend, e);
+            }
+        }
+
+        setIfSupported(factory, XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        setIfSupported(factory, XMLInputFactory.SUPPORT_DTD, false);
+        return factory;
+    }
+
+    private static void setIfSupported(XMLInputFactory factory, String property, Object value) {
+        if (factory.isPropertySupported(property)) {
+            factory.setProperty(property, value);
+        }
+    }
+
     public int parse(Path feedPath, Consumer<HumedRawProduct> consumer) {
         log.info("Parsing HUMED feed from: {}", feedPath);
 
@@ -42,43 +120,154 @@ public class HumedXmlParser {
     }
 
     public int parse(InputStream inputStream, Consumer<HumedRawProduct> consumer) {
-        XMLInputFactory factory = XMLInputFactory.newInstance();
-        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
-        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        int count;
+        try {
+            count = parseItems(inputStream, consumer, new HumedValuePool());
+        } catch (XMLStreamException e) {
+            log.error("XML parsing error: {}", e.getMessage(), e);
+            throw new RuntimeException("XML parsing error", e);
+        }
 
-        int count = 0;
+        log.info("Finished parsing HUMED feed. Total products: {}", count);
+        return count;
+    }
 
-        try {
-            XMLStreamReader reader = factory.createXMLStreamReader(inputStream, "UTF-8");
+    /**
+     * Paralelné parsovanie feedu zo súboru - súbor sa namapuje do pamäte, rozdelí podľa
+     * hraníc {@code <item>} na shardy a tie sa parsujú na ForkJoinPool.
+     *
+     * Consumer sa volá vždy na volajúcom vlákne (nemusí byť thread-safe).
+     * Pri {@code ordered} dostane produkty v poradí feedu, inak v poradí dokončenia shardov.
+     * Shardy majú najviac {@link #ITEMS_PER_SHARD} produktov a naraz je rozparsovaných najviac
+     * 2 x parallelism shardov - v pamäti je teda najviac 2 x parallelism x ITEMS_PER_SHARD
+     * produktov bez ohľadu na veľkosť feedu. Malé shardy tiež skracujú čakanie na pomalý
+     * prvý shard pri {@code ordered}.
+     *
+     * Pri parallelism <= 1 alebo feede, ktorý sa nedá rozdeliť, parsuje sekvenčne.
+     */
+    public int parseParallel(Path feedPath, int parallelism, boolean ordered, Consumer<HumedRawProduct> consumer) {
+        if (parallelism <= 1) {
+            return parse(feedPath, consumer);
+        }
 
-            while (reader.hasNext()) {
-                int event = reader.next();
+        try (FileChannel channel = FileChannel.open(feedPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0 || size > Integer.MAX_VALUE) {
+                log.info("Feed size {} not suitable for sharding, parsing sequentially", size);
+                return parse(feedPath, consumer);
+            }
 
-                if (event == XMLStreamConstants.START_ELEMENT && ITEM.equals(reader.getLocalName())) {
-                    HumedRawProduct product = parseItem(reader);
-                    if (product != null && product.getFeedId() != null) {
-                        consumer.accept(product);
-                        count++;
+            HumedFeedSharder sharder = HumedFeedSharder.scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            if (sharder.itemCount() < 2) {
+                log.info("No item boundaries suitable for sharding found, parsing sequentially");
+                return parse(feedPath, consumer);
+            }
 
-                        if (count % 500 == 0) {
-                            log.debug("Parsed {} products", count);
-                        }
+            int shardCount = Math.max(parallelism,
+                    (sharder.itemCount() + ITEMS_PER_SHARD - 1) / ITEMS_PER_SHARD);
+            List<HumedFeedSharder.Shard> shards = sharder.split(shardCount);
+            log.info("Parsing HUMED feed from: {} ({} items in {} shards, parallelism {})",
+                    feedPath, sharder.itemCount(), shards.size(), parallelism);
+
+            int count = parseShards(sharder, shards, parallelism, ordered, consumer, new HumedValuePool());
+            log.info("Finished parsing HUMED feed. Total products: {}", count);
+            return count;
+
+        } catch (IOException e) {
+            log.error("Failed to parse HUMED feed: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to parse HUMED feed", e);
+        }
+    }
+
+    private int parseShards(HumedFeedSharder sharder, List<HumedFeedSharder.Shard> shards, int parallelism,
+                            boolean ordered, Consumer<HumedRawProduct> consumer, HumedValuePool pool) {
+        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        Deque<CompletableFuture<List<HumedRawProduct>>> inFlight = new ArrayDeque<>();
+        BlockingQueue<CompletableFuture<List<HumedRawProduct>>> completed = new LinkedBlockingQueue<>();
+        int window = parallelism * 2;
+        int next = 0;
+        int count = 0;
+
+        try {
+            while (next < shards.size() || !inFlight.isEmpty()) {
+                while (next < shards.size() && inFlight.size() < window) {
+                    HumedFeedSharder.Shard shard = shards.get(next++);
+                    CompletableFuture<List<HumedRawProduct>> future =
+                            CompletableFuture.supplyAsync(() -> parseShard(sharder, shard, pool), forkJoinPool);
+                    if (!ordered) {
+                        future.whenComplete((products, error) -> completed.add(future));
                     }
+                    inFlight.add(future);
+                }
+
+                CompletableFuture<List<HumedRawProduct>> done;
+                if (ordered) {
+                    done = inFlight.poll();
+                } else {
+                    done = completed.take();
+                    inFlight.remove(done);
+                }
+
+                for (HumedRawProduct product : done.join()) {
+                    consumer.accept(product);
+                    count++;
                 }
             }
+            return count;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while parsing HUMED feed", e);
+        } catch (CompletionException e) {
+            log.error("XML parsing error: {}", e.getCause().getMessage(), e.getCause());
+            throw new RuntimeException("XML parsing error", e.getCause());
+        } finally {
+            forkJoinPool.shutdownNow();
+        }
+    }
 
-            reader.close();
+    private List<HumedRawProduct> parseShard(HumedFeedSharder sharder, HumedFeedSharder.Shard shard,
+                                             HumedValuePool pool) {
+        List<HumedRawProduct> products = new ArrayList<>(shard.items());
+        try (InputStream in = sharder.open(shard)) {
+            parseItems(in, products::add, pool);
+        } catch (XMLStreamException | IOException e) {
+            throw new CompletionException(new IllegalStateException(
+                    "Shard " + shard.index() + " (bytes " + shard.start() + "-" + shard.end() + "): " + e.getMessage(), e));
+        }
+        return products;
+    }
 
-        } catch (XMLStreamException e) {
-            log.error("XML parsing error: {}", e.getMessage(), e);
-            throw new RuntimeException("XML parsing error", e);
+    /**
+     * Prejde dokument a každý item s feed_id odovzdá consumerovi.
+     * Opakujúce sa hodnoty (kategórie, atribúty, dostupnosť) sa zdieľajú cez pool.
+     */
+    private int parseItems(InputStream inputStream, Consumer<HumedRawProduct> consumer,
+                           HumedValuePool pool) throws XMLStreamException {
+        int count = 0;
+        XMLStreamReader reader = factory.createXMLStreamReader(inputStream, "UTF-8");
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT && ITEM.equals(reader.getLocalName())) {
+                HumedRawProduct product = parseItem(reader, pool);
+                if (product != null && product.getFeedId() != null) {
+                    consumer.accept(product);
+                    count++;
+
+                    if (count % 500 == 0) {
+                        log.debug("Parsed {} products", count);
+                    }
+                }
+            }
         }
 
-        log.info("Finished parsing HUMED feed. Total products: {}", count);
+        reader.close();
         return count;
     }
 
-    private HumedRawProduct parseItem(XMLStreamReader reader) throws XMLStreamException {
+    private HumedRawProduct parseItem(XMLStreamReader reader, HumedValuePool pool) throws XMLStreamException {
         HumedRawProduct product = new HumedRawProduct();
         StringBuilder textContent = new StringBuilder();
 
@@ -127,15 +316,15 @@ public class HumedXmlParser {
                             case "category_name" -> categoryName = decodeHtmlEntities(text);
                             case "category" -> {
                                 if (categoryId != null || categoryName != null) {
-                                    product.addCategory(new HumedRawProduct.HumedCategory(categoryId, categoryName));
+                                    product.addCategory(pool.category(categoryId, categoryName));
                                 }
                                 inCategory = false;
                             }
                         }
                     } else if (inAdditionalField) {
                         switch (elementName) {
-                            case "name" -> additionalFieldName = text;
-                            case "value" -> additionalFieldValue = text;
+                            case "name" -> additionalFieldName = pool.string(text);
+                            case "value" -> additionalFieldValue = pool.string(text);
                             case "additional_field" -> {
                                 product.addAttribute(additionalFieldName, additionalFieldValue);
                                 inAdditionalField = false;
@@ -152,8 +341,8 @@ public class HumedXmlParser {
                             case "cenaVhumede" -> product.setPricePurchase(parsePrice(text));
                             case "price" -> product.setPriceRetail(parsePrice(text));
                             case "weight" -> product.setWeightGrams(parseWeight(text));
-                            case "availability" -> product.setAvailability(text);
-                            case "condition" -> product.setCondition(text);
+                            case "availability" -> product.setAvailability(pool.string(text));
+                            case "condition" -> product.setCondition(pool.string(text));
                             case "image_link" -> product.addImage(text);
                             case "additional_image_link" -> product.addImage(text);
                         }
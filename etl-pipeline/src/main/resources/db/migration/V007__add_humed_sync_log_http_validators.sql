@@ -0,0 +1,20 @@
+-- =============================================================
+-- V007: HTTP validátory feedu v sync logu
+-- =============================================================
+-- ETag a Last-Modified z poslednej odpovede sa posielajú späť
+-- ako If-None-Match / If-Modified-Since. Pri HTTP 304 alebo
+-- rovnakom feed_checksum sa beh zaloguje so stavom 'unchanged'.
+
+ALTER TABLE staging.humed_sync_log
+    ADD COLUMN IF NOT EXISTS http_etag TEXT,
+    ADD COLUMN IF NOT EXISTS http_last_modified TEXT;
+
+CREATE INDEX IF NOT EXISTS idx_humed_sync_log_last_success
+    ON staging.humed_sync_log (id DESC)
+    WHERE status IN ('success', 'unchanged');
+
+COMMENT ON COLUMN staging.humed_sync_log.http_etag IS
+    'ETag hlavička stiahnutého feedu (pre If-None-Match)';
+
+COMMENT ON COLUMN staging.humed_sync_log.http_last_modified IS
+    'Last-Modified hlavička stiahnutého feedu (pre If-Modified-Since)';
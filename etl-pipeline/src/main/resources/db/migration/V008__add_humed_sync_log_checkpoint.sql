@@ -0,0 +1,17 @@
+-- =============================================================
+-- V008: Checkpointy HUMED syncu
+-- =============================================================
+-- checkpoint_item = počet produktov od začiatku feedu, ktoré sú
+-- zapísané v staging. Prerušený beh (failed / running po páde)
+-- nad rovnakým feed_checksum pokračuje od tejto pozície.
+
+ALTER TABLE staging.humed_sync_log
+    ADD COLUMN IF NOT EXISTS checkpoint_item INTEGER,
+    ADD COLUMN IF NOT EXISTS checkpoint_at TIMESTAMPTZ;
+
+CREATE INDEX IF NOT EXISTS idx_humed_sync_log_checkpoint
+    ON staging.humed_sync_log (feed_checksum, id DESC)
+    WHERE checkpoint_item > 0;
+
+COMMENT ON COLUMN staging.humed_sync_log.checkpoint_item IS
+    'Počet produktov feedu (súvislý prefix) zapísaných v staging pri poslednom checkpointe';
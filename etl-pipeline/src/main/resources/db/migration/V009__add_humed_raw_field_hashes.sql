@@ -0,0 +1,16 @@
+-- =============================================================
+-- V009: Hashe skupín polí pre delta UPDATE staging.humed_raw
+-- =============================================================
+-- field_hashes[i] = 64-bit hash skupiny stĺpcov (HumedProductEncoder.FieldGroup):
+--   1 identity (sku, gtin, title, link), 2 description,
+--   3 price (price_purchase, price_retail),
+--   4 availability (availability, condition, weight_grams),
+--   5 categories, 6 images, 7 attributes
+-- Pri zmene checksumu sa prepíšu len skupiny so zmeneným hashom.
+-- Riadky bez hashov (NULL) sa pri najbližšej zmene prepíšu celé.
+
+ALTER TABLE staging.humed_raw
+    ADD COLUMN IF NOT EXISTS field_hashes BIGINT[];
+
+COMMENT ON COLUMN staging.humed_raw.field_hashes IS
+    'Hashe skupín stĺpcov (identity, description, price, availability, categories, images, attributes)';
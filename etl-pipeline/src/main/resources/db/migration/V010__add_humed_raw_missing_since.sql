@@ -0,0 +1,15 @@
+-- =============================================================
+-- V010: Produkty, ktoré zmizli z HUMED feedu
+-- =============================================================
+-- missing_since = čas syncu, v ktorom feed_id vo feede chýbal.
+-- Zdroj v catalog.product_sources a produkt bez iného aktívneho
+-- zdroja sa deaktivujú; pri opätovnom výskyte sa oživia.
+
+ALTER TABLE staging.humed_raw
+    ADD COLUMN IF NOT EXISTS missing_since TIMESTAMPTZ;
+
+CREATE INDEX IF NOT EXISTS idx_humed_raw_missing ON staging.humed_raw (feed_id)
+    WHERE missing_since IS NOT NULL;
+
+COMMENT ON COLUMN staging.humed_raw.missing_since IS
+    'Od kedy produkt chýba vo feede (NULL = vo feede je)';
@@ -0,0 +1,49 @@
+-- =============================================================
+-- V011: Watermark inkrementálnej normalizácie
+-- =============================================================
+-- Úspešný beh normalizácie uloží watermark = MAX(updated_at) zo
+-- staging na začiatku behu. Ďalší beh spracuje len riadky zmenené
+-- po ňom. Ak sa od posledného behu zmenili category_rules alebo
+-- category_exclusions zdroja (rules_fingerprint = počet riadkov +
+-- posledný updated_at), beh je plný.
+
+CREATE TABLE IF NOT EXISTS catalog.normalization_runs
+(
+    id                 SERIAL PRIMARY KEY,
+    source             VARCHAR(20) NOT NULL,
+    started_at         TIMESTAMPTZ NOT NULL,
+    finished_at        TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    is_full            BOOLEAN     NOT NULL,
+    watermark          TIMESTAMPTZ,
+    rules_fingerprint  TEXT,
+    products_processed INTEGER              DEFAULT 0,
+    products_created   INTEGER              DEFAULT 0,
+    products_updated   INTEGER              DEFAULT 0,
+    products_failed    INTEGER              DEFAULT 0
+);
+
+CREATE INDEX IF NOT EXISTS idx_normalization_runs_source
+    ON catalog.normalization_runs (source, id DESC);
+
+-- Zmena pravidla musí byť viditeľná vo fingerprinte
+ALTER TABLE catalog.category_rules
+    ADD COLUMN IF NOT EXISTS updated_at TIMESTAMPTZ DEFAULT NOW();
+
+ALTER TABLE catalog.category_exclusions
+    ADD COLUMN IF NOT EXISTS updated_at TIMESTAMPTZ DEFAULT NOW();
+
+CREATE TRIGGER trg_category_rules_updated
+    BEFORE UPDATE
+    ON catalog.category_rules
+    FOR EACH ROW EXECUTE FUNCTION update_updated_at();
+
+CREATE TRIGGER trg_category_exclusions_updated
+    BEFORE UPDATE
+    ON catalog.category_exclusions
+    FOR EACH ROW EXECUTE FUNCTION update_updated_at();
+
+-- Inkrementálny výber zmenených riadkov zo staging
+CREATE INDEX IF NOT EXISTS idx_humed_raw_updated_at ON staging.humed_raw (updated_at);
+
+COMMENT ON COLUMN catalog.normalization_runs.watermark IS
+    'MAX(staging.updated_at) na začiatku behu - ďalší beh spracuje len novšie riadky';
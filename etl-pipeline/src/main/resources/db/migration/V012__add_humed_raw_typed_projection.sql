@@ -0,0 +1,35 @@
+-- =============================================================
+-- V012: Typované stĺpce odvodené z JSON v staging.humed_raw
+-- =============================================================
+-- Najhlbšia kategória a množstvá z atribútov (Balenie, Paleta) sa
+-- počítajú raz pri zápise do staging (generated stĺpce) - konzumenti
+-- nemusia parsovať JSON a nepadajú na nečíselných hodnotách.
+-- ADD COLUMN ... STORED prepočíta aj existujúce riadky.
+
+-- Bezpečný prevod textu na INTEGER - nečíselná hodnota alebo pretečenie = NULL
+CREATE OR REPLACE FUNCTION staging.parse_int(value TEXT)
+RETURNS INTEGER
+LANGUAGE sql IMMUTABLE PARALLEL SAFE AS
+$$
+SELECT CASE WHEN btrim(value) ~ '^[+-]?[0-9]{1,10}$' THEN
+    CASE WHEN btrim(value)::bigint BETWEEN -2147483648 AND 2147483647
+         THEN btrim(value)::integer END
+END
+$$;
+
+ALTER TABLE staging.humed_raw
+    ADD COLUMN IF NOT EXISTS deepest_category_path TEXT
+        GENERATED ALWAYS AS (categories -> -1 ->> 'name') STORED,
+    ADD COLUMN IF NOT EXISTS pack_quantity INTEGER
+        GENERATED ALWAYS AS (staging.parse_int(attributes ->> 'Balenie')) STORED,
+    ADD COLUMN IF NOT EXISTS pallet_quantity INTEGER
+        GENERATED ALWAYS AS (staging.parse_int(attributes ->> 'Paleta')) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_humed_raw_deepest_category ON staging.humed_raw (deepest_category_path);
+
+COMMENT ON COLUMN staging.humed_raw.deepest_category_path IS
+    'Názov poslednej (najhlbšej) kategórie z categories';
+COMMENT ON COLUMN staging.humed_raw.pack_quantity IS
+    'Atribút Balenie ako číslo (NULL ak chýba alebo nie je číslo)';
+COMMENT ON COLUMN staging.humed_raw.pallet_quantity IS
+    'Atribút Paleta ako číslo (NULL ak chýba alebo nie je číslo)';
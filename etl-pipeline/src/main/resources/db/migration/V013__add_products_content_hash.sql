@@ -0,0 +1,51 @@
+-- =============================================================
+-- V013: Hash obsahu normalizovaného produktu
+-- =============================================================
+-- content_hash = md5 normalizovaných stĺpcov, ktoré plní normalizácia.
+-- Produkt so zhodným hashom sa neprepisuje - nevzniká mŕtvy riadok,
+-- nespúšťa sa trg_products_updated a updated_at znamená skutočnú zmenu.
+--
+-- Formát musí zodpovedať sk.pcola.etl.catalog.ProductContentHash:
+-- hodnoty v textovom tvare PostgreSQL (numeric so škálou stĺpca,
+-- jsonb::text), NULL = '\N', oddeľovač chr(31).
+
+CREATE OR REPLACE FUNCTION catalog.product_content_hash(
+    name TEXT, description TEXT, category_id INTEGER,
+    price_cost NUMERIC, price_b2b NUMERIC, margin_percent NUMERIC,
+    weight_kg NUMERIC, pack_quantity INTEGER,
+    images JSONB, attributes JSONB, stock_status TEXT)
+RETURNS TEXT
+LANGUAGE sql IMMUTABLE PARALLEL SAFE AS
+$$
+SELECT md5(concat_ws(chr(31),
+    COALESCE(name, '\N'),
+    COALESCE(description, '\N'),
+    COALESCE(category_id::text, '\N'),
+    COALESCE(price_cost::text, '\N'),
+    COALESCE(price_b2b::text, '\N'),
+    COALESCE(margin_percent::text, '\N'),
+    COALESCE(weight_kg::text, '\N'),
+    COALESCE(pack_quantity::text, '\N'),
+    COALESCE(images::text, '\N'),
+    COALESCE(attributes::text, '\N'),
+    COALESCE(stock_status, '\N')))
+$$;
+
+ALTER TABLE catalog.products
+    ADD COLUMN IF NOT EXISTS content_hash VARCHAR(32);
+
+-- Backfill - prvý beh po migrácii potom neprepíše nezmenené produkty.
+-- Bez trg_products_updated: updated_at ostáva časom poslednej skutočnej zmeny
+-- (inak by sa posunul na celom katalógu a spustil plný export).
+ALTER TABLE catalog.products DISABLE TRIGGER trg_products_updated;
+
+UPDATE catalog.products SET content_hash = catalog.product_content_hash(
+    name, description, category_id,
+    price_cost, price_b2b, margin_percent,
+    weight_kg, pack_quantity,
+    images, attributes, stock_status);
+
+ALTER TABLE catalog.products ENABLE TRIGGER trg_products_updated;
+
+COMMENT ON COLUMN catalog.products.content_hash IS
+    'md5 normalizovaných stĺpcov (catalog.product_content_hash) - zhodný hash = bez UPDATE';
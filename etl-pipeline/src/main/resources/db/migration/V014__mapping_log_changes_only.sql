@@ -0,0 +1,50 @@
+-- =============================================================
+-- V014: category_mapping_log len pri zmene mapovania
+-- =============================================================
+-- Normalizácia zapisuje riadok len keď sa výsledok mapovania produktu
+-- (matched_rule_id, target_category_id, match_type) líši od jeho
+-- posledného záznamu. Aktuálne mapovanie produktu = posledný riadok
+-- podľa id, pohľady preto čítajú len ten.
+
+CREATE INDEX IF NOT EXISTS idx_mapping_log_latest
+    ON catalog.category_mapping_log (source, source_product_id, id DESC);
+
+-- Nenamapované = posledné mapovanie je unmapped alebo žiadne
+CREATE OR REPLACE VIEW catalog.v_unmapped_products AS
+SELECT
+    h.feed_id,
+    h.sku,
+    h.title,
+    h.categories,
+    h.imported_at
+FROM staging.humed_raw h
+WHERE NOT EXISTS (
+    SELECT 1
+    FROM (
+        SELECT m.match_type
+        FROM catalog.category_mapping_log m
+        WHERE m.source = 'humed'
+          AND m.source_product_id = h.feed_id
+        ORDER BY m.id DESC
+        LIMIT 1
+    ) latest
+    WHERE latest.match_type != 'unmapped'
+)
+AND h.is_excluded = FALSE;
+
+CREATE OR REPLACE VIEW catalog.v_mapping_stats AS
+SELECT
+    source,
+    match_type,
+    COUNT(*) as count,
+    COUNT(*) * 100.0 / SUM(COUNT(*)) OVER (PARTITION BY source) as percentage
+FROM (
+    SELECT DISTINCT ON (source, source_product_id) source, match_type
+    FROM catalog.category_mapping_log
+    ORDER BY source, source_product_id, id DESC
+) latest
+GROUP BY source, match_type
+ORDER BY source, count DESC;
+
+COMMENT ON TABLE catalog.category_mapping_log IS
+    'Zmeny mapovania kategórií produktov - aktuálne mapovanie je posledný riadok produktu podľa id';
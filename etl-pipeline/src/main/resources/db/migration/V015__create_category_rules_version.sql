@@ -0,0 +1,42 @@
+-- =============================================================
+-- V015: Verzia pravidiel mapovania kategórií
+-- =============================================================
+-- Každý INSERT / UPDATE / DELETE / TRUNCATE nad category_rules alebo
+-- category_exclusions zvýši verziu. CategoryMatcher podľa nej pozná,
+-- či musí znovu načítať snapshot pravidiel a zahodiť cache výsledkov
+-- mapovania podľa kategórie.
+
+CREATE TABLE IF NOT EXISTS catalog.category_rules_version
+(
+    id         INTEGER PRIMARY KEY DEFAULT 1 CHECK (id = 1),
+    version    BIGINT      NOT NULL DEFAULT 1,
+    changed_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
+INSERT INTO catalog.category_rules_version (id) VALUES (1)
+ON CONFLICT (id) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION catalog.bump_category_rules_version()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE catalog.category_rules_version
+    SET version = version + 1,
+        changed_at = NOW()
+    WHERE id = 1;
+    RETURN NULL;
+END;
+$$
+LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_category_rules_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE
+    ON catalog.category_rules
+    FOR EACH STATEMENT EXECUTE FUNCTION catalog.bump_category_rules_version();
+
+CREATE TRIGGER trg_category_exclusions_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE
+    ON catalog.category_exclusions
+    FOR EACH STATEMENT EXECUTE FUNCTION catalog.bump_category_rules_version();
+
+COMMENT ON TABLE catalog.category_rules_version IS
+    'Verzia category_rules + category_exclusions - zvyšuje ju trigger pri každej zmene';
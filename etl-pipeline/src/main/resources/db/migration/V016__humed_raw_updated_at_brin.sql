@@ -0,0 +1,21 @@
+-- =============================================================
+-- V016: BRIN index na staging.humed_raw.updated_at
+-- =============================================================
+-- trg_humed_raw_updated nastaví updated_at = NOW() pri každom UPDATE.
+-- B-tree index z V011 na tomto stĺpci preto robí každý update staging
+-- riadku non-HOT (aj zmenu len ceny zo skupinových hashov V009).
+--
+-- BRIN je sumarizačný index - od PostgreSQL 16 HOT update neblokuje.
+-- Výber zmenených riadkov pri inkrementálnej normalizácii
+-- (updated_at > watermark) je menej presný ako cez b-tree: prečíta
+-- celé rozsahy blokov, v ktorých sa niečo zmenilo, a riadky prefiltruje.
+-- Na PostgreSQL < 16 BRIN HOT blokuje tiež - tam index radšej zmazať
+-- a inkrementálny výber nechať na sekvenčný scan.
+
+DROP INDEX IF EXISTS staging.idx_humed_raw_updated_at;
+
+CREATE INDEX IF NOT EXISTS idx_humed_raw_updated_at_brin
+    ON staging.humed_raw USING brin (updated_at) WITH (pages_per_range = 32);
+
+COMMENT ON INDEX staging.idx_humed_raw_updated_at_brin IS
+    'Inkrementálna normalizácia (updated_at > watermark) - BRIN, aby update staging ostal HOT';
@@ -0,0 +1,13 @@
+-- =============================================================
+-- V017: Chybné produkty behu normalizácie
+-- =============================================================
+-- Beh posunie watermark aj pri chybných produktoch a uloží ich
+-- source_id (pri HUMED feed_id). Ďalší inkrementálny beh ich
+-- spracuje znova spolu so zmenenými riadkami staging, takže trvalo
+-- chybný produkt nezastaví watermark.
+
+ALTER TABLE catalog.normalization_runs
+    ADD COLUMN IF NOT EXISTS failed_source_ids TEXT[];
+
+COMMENT ON COLUMN catalog.normalization_runs.failed_source_ids IS
+    'source_id produktov, ktoré v behu zlyhali - ďalší beh ich zopakuje';
@@ -0,0 +1,23 @@
+-- =============================================================
+-- V018: Fingerprint pravidiel normalizácie = verzia pravidiel
+-- =============================================================
+-- V011 odvodzovala rules_fingerprint z COUNT(*) a MAX(updated_at)
+-- category_rules / category_exclusions. Zmazanie jedného a vloženie
+-- iného pravidla v tej istej sekunde fingerprint nezmenilo. Normalizácia
+-- teraz používa catalog.category_rules_version.version (V015), ktorú
+-- zvýši každý INSERT / UPDATE / DELETE / TRUNCATE - rovnako ako
+-- CategoryMatcher. Stĺpce updated_at a ich triggery už nie sú potrebné.
+--
+-- Prvý beh po migrácii je plný (uložený fingerprint má starý formát).
+
+DROP TRIGGER IF EXISTS trg_category_rules_updated ON catalog.category_rules;
+DROP TRIGGER IF EXISTS trg_category_exclusions_updated ON catalog.category_exclusions;
+
+ALTER TABLE catalog.category_rules
+    DROP COLUMN IF EXISTS updated_at;
+
+ALTER TABLE catalog.category_exclusions
+    DROP COLUMN IF EXISTS updated_at;
+
+COMMENT ON COLUMN catalog.normalization_runs.rules_fingerprint IS
+    'catalog.category_rules_version.version na začiatku behu - pri zmene je ďalší beh plný';
@@ -0,0 +1,52 @@
+package sk.pcola.etl.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CategoryMappingLogAppenderTest {
+
+    private static final CategoryMatcher.MatchResult EXACT = new CategoryMatcher.MatchResult(10, 1, "exact");
+    private static final CategoryMatcher.MatchResult UNMAPPED = new CategoryMatcher.MatchResult(null, null, "unmapped");
+
+    @Test
+    void shouldWriteOnlyChangedMappingsInBatches() {
+        Map<String, CategoryMatcher.MatchResult> last = new ConcurrentHashMap<>();
+        last.put("p1", EXACT);
+        last.put("p2", EXACT);
+        List<List<CategoryMappingLogAppender.Entry>> batches = new CopyOnWriteArrayList<>();
+
+        try (CategoryMappingLogAppender appender = new CategoryMappingLogAppender(last, batches::add, 2, 1)) {
+            assertFalse(appender.append("p1", "s1", "A > B", EXACT));
+            assertTrue(appender.append("p2", "s2", "A > C", UNMAPPED));
+            assertTrue(appender.append("p3", "s3", "A > B", EXACT));
+            assertFalse(appender.append("p3", "s3", "A > B", EXACT));
+            assertTrue(appender.append("p4", "s4", null, UNMAPPED));
+            assertEquals(3, appender.appended());
+        }
+
+        assertEquals(2, batches.size());
+        assertEquals(List.of("p2", "p3", "p4"), batches.stream()
+                .flatMap(List::stream)
+                .map(CategoryMappingLogAppender.Entry::sourceProductId)
+                .toList());
+        assertEquals(UNMAPPED, last.get("p2"));
+    }
+
+    @Test
+    void shouldPropagateWriterFailureOnClose() {
+        CategoryMappingLogAppender appender = new CategoryMappingLogAppender(new ConcurrentHashMap<>(),
+                batch -> {
+                    throw new IllegalStateException("DB down");
+                }, 10, 1);
+        appender.append("p1", "s1", "A", EXACT);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, appender::close);
+        assertEquals("DB down", e.getMessage());
+    }
+}
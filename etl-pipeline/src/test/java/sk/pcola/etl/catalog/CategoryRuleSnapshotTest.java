@@ -0,0 +1,55 @@
+package sk.pcola.etl.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CategoryRuleSnapshotTest {
+
+    private static final CategoryRuleSnapshot SNAPSHOT = new CategoryRuleSnapshot(
+            List.of(
+                    new CategoryRuleSnapshot.Rule(5, "humed", "Papier > Toaletný", null, null, 50, 100),
+                    new CategoryRuleSnapshot.Rule(4, "humed", "Papier > Toaletný", null, null, 40, 100),
+                    new CategoryRuleSnapshot.Rule(6, "humed", null, "Papier > %", null, 60, 100),
+                    new CategoryRuleSnapshot.Rule(7, "humed", null, "Papier > Utierky%", null, 70, 10),
+                    new CategoryRuleSnapshot.Rule(8, "humed", null, null, "%rukavice%", 80, 100),
+                    new CategoryRuleSnapshot.Rule(9, "other", null, null, "%", 90, 1)),
+            List.of(new CategoryRuleSnapshot.Exclusion(1, "humed", "Akcia%")),
+            1, 2);
+
+    @Test
+    void shouldApplyStepsInOrder() {
+        assertEquals(new CategoryMatcher.MatchResult(null, null, "excluded"),
+                SNAPSHOT.match("humed", "Akcia > Papier > Toaletný", "Rukavice"));
+        assertEquals(new CategoryMatcher.MatchResult(40, 4, "exact"),
+                SNAPSHOT.match("humed", "Papier > Toaletný", "Rukavice"));
+        assertEquals(new CategoryMatcher.MatchResult(80, 8, "title"),
+                SNAPSHOT.match("humed", "Ochrana", "Nitrilové RUKAVICE"));
+        assertEquals(new CategoryMatcher.MatchResult(80, 8, "title"),
+                SNAPSHOT.match("humed", null, "rukavice"));
+        assertEquals(new CategoryMatcher.MatchResult(null, null, "unmapped"),
+                SNAPSHOT.match("humed", "Ochrana", null));
+    }
+
+    @Test
+    void shouldPickLowestPriorityThenId() {
+        assertEquals(new CategoryMatcher.MatchResult(70, 7, "pattern"),
+                SNAPSHOT.match("humed", "Papier > Utierky", null));
+        assertEquals(new CategoryMatcher.MatchResult(60, 6, "pattern"),
+                SNAPSHOT.match("humed", "Papier > Servítky", null));
+        assertEquals(new CategoryMatcher.MatchResult(null, null, "unmapped"),
+                SNAPSHOT.match("unknown", "Papier > Servítky", "rukavice"));
+    }
+
+    @Test
+    void shouldEvaluateTitleForEachProductOfCachedCategory() {
+        assertEquals(new CategoryMatcher.MatchResult(80, 8, "title"),
+                SNAPSHOT.match("humed", "Ochrana > Ruky", "Rukavice L"));
+        assertEquals(new CategoryMatcher.MatchResult(null, null, "unmapped"),
+                SNAPSHOT.match("humed", "Ochrana > Ruky", "Okuliare"));
+        assertEquals(new CategoryMatcher.MatchResult(80, 8, "title"),
+                SNAPSHOT.match("humed", "Ochrana > Ruky", "rukavice S"));
+    }
+}
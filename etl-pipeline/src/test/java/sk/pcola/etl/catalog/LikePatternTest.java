@@ -0,0 +1,46 @@
+package sk.pcola.etl.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LikePatternTest {
+
+    @Test
+    void shouldMatchLikeWildcards() {
+        LikePattern pattern = LikePattern.like("Hygiena > %papier_");
+
+        assertTrue(pattern.matches("Hygiena > Toaletný papierX"));
+        assertTrue(pattern.matches("Hygiena > papier\n"));
+        assertFalse(pattern.matches("Hygiena > Toaletný papier"));
+        assertFalse(pattern.matches("hygiena > papierX"));
+        assertFalse(pattern.matches(null));
+    }
+
+    @Test
+    void shouldTreatRegexCharactersAndEscapesLiterally() {
+        assertTrue(LikePattern.like("100\\% (a+b).*").matches("100% (a+b).*"));
+        assertFalse(LikePattern.like("100\\%").matches("1000"));
+        assertTrue(LikePattern.like("a\\_b").matches("a_b"));
+        assertFalse(LikePattern.like("a\\_b").matches("axb"));
+        assertThrows(IllegalArgumentException.class, () -> LikePattern.like("abc\\"));
+    }
+
+    @Test
+    void shouldIgnoreCaseButNotDiacriticsForIlike() {
+        LikePattern pattern = LikePattern.ilike("%rukavice%");
+
+        assertTrue(pattern.matches("Nitrilové RUKAVICE M"));
+        assertTrue(LikePattern.ilike("%čistič%").matches("ČISTIČ podláh"));
+        assertFalse(LikePattern.ilike("%cistic%").matches("Čistič podláh"));
+    }
+
+    @Test
+    void shouldDetectSubstringPatterns() {
+        assertEquals("rukavice", LikePattern.ilike("%rukavice%").substring());
+        assertEquals("100%", LikePattern.ilike("%100\\%%").substring());
+        assertNull(LikePattern.ilike("rukavice%").substring());
+        assertNull(LikePattern.ilike("%a_b%").substring());
+        assertNull(LikePattern.ilike("%%").substring());
+    }
+}
@@ -0,0 +1,31 @@
+package sk.pcola.etl.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductContentHashTest {
+
+    @Test
+    void shouldMatchPostgresTextFormat() {
+        // md5('Rukavice' || chr(31) || '\N' || chr(31) || '12' || ... ) ako catalog.product_content_hash
+        String hash = ProductContentHash.of("Rukavice", null, 12,
+                new BigDecimal("1.2000"), new BigDecimal("2.0000"), new BigDecimal("40.00"),
+                new BigDecimal("0.1500"), 100, "[\"a.jpg\"]", null, "instock");
+
+        assertEquals("6d2f578d9d0053855182728f0e29089d", hash);
+    }
+
+    @Test
+    void shouldDistinguishNullFromEmptyAndScale() {
+        String withNull = ProductContentHash.of(null, "", null, null, null, null, null, null, null, null, null);
+        String withEmpty = ProductContentHash.of("", "", null, null, null, null, null, null, null, null, null);
+        assertNotEquals(withNull, withEmpty);
+
+        String scale2 = ProductContentHash.of("x", null, 1, new BigDecimal("1.20"), null, null, null, null, null, null, null);
+        String scale4 = ProductContentHash.of("x", null, 1, new BigDecimal("1.2000"), null, null, null, null, null, null, null);
+        assertNotEquals(scale2, scale4);
+    }
+}
@@ -0,0 +1,66 @@
+package sk.pcola.etl.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TitlePatternMatcherTest {
+
+    private static TitlePatternMatcher matcher(String... patterns) {
+        return new TitlePatternMatcher(List.of(patterns).stream().map(LikePattern::ilike).toList());
+    }
+
+    @Test
+    void shouldReturnHighestPriorityOfAllContainedSubstrings() {
+        TitlePatternMatcher matcher = matcher("%nitril%", "%rukavice%", "%vice%", "%he%", "%hers%");
+
+        assertEquals(0, matcher.firstMatch("Rukavice NITRILOVÉ M"));
+        assertEquals(1, matcher.firstMatch("Vinylové rukavice"));
+        assertEquals(2, matcher.firstMatch("Zverák Vice"));
+        assertEquals(3, matcher.firstMatch("ushers"));
+        assertEquals(-1, matcher.firstMatch("Papierové utierky"));
+        assertEquals(-1, matcher.firstMatch(null));
+    }
+
+    @Test
+    void shouldFoldCaseButKeepDiacritics() {
+        TitlePatternMatcher matcher = matcher("%čistič%", "%cistic%");
+
+        assertEquals(0, matcher.firstMatch("ČISTIČ podláh"));
+        assertEquals(1, matcher.firstMatch("CISTIC podlah"));
+        assertEquals(-1, matcher.firstMatch("Čistic"));
+    }
+
+    @Test
+    void shouldCombineRegexFallbackByPriority() {
+        TitlePatternMatcher matcher = matcher("%mydlo%", "Tekuté%", "%gél%", "%100\\%%", "%a_b%");
+
+        assertEquals(0, matcher.firstMatch("Tekuté mydlo"));
+        assertEquals(2, matcher.firstMatch("Tekutý gél? Tekuté gél"));
+        assertEquals(1, matcher.firstMatch("Tekuté gél"));
+        assertEquals(2, matcher.firstMatch("Sprchový GÉL"));
+        assertEquals(3, matcher.firstMatch("Bavlna 100%"));
+        assertEquals(4, matcher.firstMatch("xAxBx"));
+        assertEquals(-1, matcher.firstMatch("Bavlna 100"));
+    }
+
+    @Test
+    void shouldMatchLikeRegexForSubstringPatterns() {
+        List<String> patterns = List.of("%ab%", "%bc%", "%abcd%", "%c%", "%ÁB%");
+        TitlePatternMatcher matcher = matcher(patterns.toArray(String[]::new));
+        List<LikePattern> compiled = patterns.stream().map(LikePattern::ilike).toList();
+
+        for (String title : List.of("abcd", "xbc", "dcba", "ÁBx", "áb", "zzz", "ABCD")) {
+            int expected = -1;
+            for (int i = 0; i < compiled.size(); i++) {
+                if (compiled.get(i).matches(title)) {
+                    expected = i;
+                    break;
+                }
+            }
+            assertEquals(expected, matcher.firstMatch(title), title);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package sk.pcola.etl.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Murmur3Hash128Test {
+
+    @Test
+    void shouldMatchReferenceVectors() {
+        assertEquals("00000000000000000000000000000000", hash(""));
+        assertEquals("cbd8a7b341bd9b025b1e906a48ae1d19", hash("hello"));
+        assertEquals("e34bbc7bbc071b6c7a433ca9c49a9347", hash("The quick brown fox jumps over the lazy dog"));
+        assertEquals("1d63dd4591920335b3fc702aa858586d", hash("0123456789abcdef0123456789abcdef!"));
+    }
+
+    @Test
+    void shouldGiveSameResultForAnyChunking() {
+        byte[] data = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+        Murmur3Hash128 hasher = new Murmur3Hash128();
+
+        for (int chunk = 1; chunk <= data.length; chunk++) {
+            for (int i = 0; i < data.length; i += chunk) {
+                hasher.update(data, i, Math.min(chunk, data.length - i));
+            }
+            assertEquals("e34bbc7bbc071b6c7a433ca9c49a9347", hasher.finishHex(), "chunk " + chunk);
+        }
+
+        for (byte b : data) {
+            hasher.update(b);
+        }
+        assertEquals("e34bbc7bbc071b6c7a433ca9c49a9347", hasher.finishHex());
+    }
+
+    private static String hash(String s) {
+        Murmur3Hash128 hasher = new Murmur3Hash128();
+        hasher.update(s.getBytes(StandardCharsets.UTF_8));
+        return hasher.finishHex();
+    }
+}
@@ -0,0 +1,46 @@
+package sk.pcola.etl.staging.humed;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HumedChecksumIndexTest {
+
+    private static final String SHA_A = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private static final String SHA_B = "60303ae22b998861bce3b28f33eec1be758a213c86c93c076dbe9f558c11c752";
+
+    @Test
+    void shouldMatchNumericAndTextIds() {
+        HumedChecksumIndex index = new HumedChecksumIndex(2);
+        index.put("922", SHA_A);
+        index.put("A-17", SHA_B);
+
+        assertTrue(index.isUnchanged("922", SHA_A));
+        assertFalse(index.isUnchanged("922", SHA_B));
+        assertTrue(index.isUnchanged("A-17", SHA_B));
+        assertFalse(index.isUnchanged("0922", SHA_A));
+        assertFalse(index.isUnchanged("923", SHA_A));
+    }
+
+    @Test
+    void shouldGrowBeyondExpectedSize() {
+        HumedChecksumIndex index = new HumedChecksumIndex(0);
+        for (int i = 0; i < 50_000; i++) {
+            index.put(Integer.toString(i), i % 2 == 0 ? SHA_A : SHA_B);
+        }
+
+        assertEquals(50_000, index.size());
+        assertTrue(index.isUnchanged("49998", SHA_A));
+        assertTrue(index.isUnchanged("49999", SHA_B));
+        assertFalse(index.isUnchanged("49999", SHA_A));
+    }
+
+    @Test
+    void shouldIgnoreMalformedChecksum() {
+        HumedChecksumIndex index = new HumedChecksumIndex(4);
+        index.put("1", "not-a-checksum");
+
+        assertEquals(0, index.size());
+        assertFalse(index.isUnchanged("1", "not-a-checksum"));
+    }
+}
@@ -0,0 +1,62 @@
+package sk.pcola.etl.staging.humed;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sk.pcola.etl.config.HumedConfig;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HumedFeedArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void shouldArchiveOncePerChecksumAndReplayContent() throws Exception {
+        HumedFeedArchive archive = archive(dir.resolve("archive"), 30);
+        Path feed = Files.writeString(dir.resolve("feed.xml"), "<rss><channel><item/></channel></rss>");
+
+        archive.archive(feed, "abc123");
+        archive.archive(feed, "abc123");
+        assertEquals(1, countSnapshots(dir.resolve("archive")));
+
+        Path snapshot = archive.resolve("abc");
+        Path extracted = archive.extract(snapshot);
+        try {
+            assertEquals(Files.readString(feed), Files.readString(extracted));
+        } finally {
+            Files.deleteIfExists(extracted);
+        }
+    }
+
+    @Test
+    void shouldKeepOnlyNewestSnapshots() throws Exception {
+        Path archiveDir = Files.createDirectories(dir.resolve("archive"));
+        Files.writeString(archiveDir.resolve("humed_20240101-020000_old1.xml.gz"), "");
+        Files.writeString(archiveDir.resolve("humed_20240102-020000_old2.xml.gz"), "");
+        Path feed = Files.writeString(dir.resolve("feed.xml"), "<rss/>");
+
+        archive(archiveDir, 2).archive(feed, "new");
+
+        assertEquals(2, countSnapshots(archiveDir));
+        assertFalse(Files.exists(archiveDir.resolve("humed_20240101-020000_old1.xml.gz")));
+        assertThrows(IllegalArgumentException.class, () -> archive(archiveDir, 2).resolve("missing"));
+    }
+
+    private HumedFeedArchive archive(Path archiveDir, int retention) {
+        HumedConfig config = new HumedConfig();
+        config.setArchiveDir(archiveDir.toString());
+        config.setArchiveRetention(retention);
+        return new HumedFeedArchive(config);
+    }
+
+    private long countSnapshots(Path archiveDir) throws Exception {
+        try (Stream<Path> files = Files.list(archiveDir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".xml.gz")).count();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package sk.pcola.etl.staging.humed;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import sk.pcola.etl.config.HumedConfig;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HumedProductEncoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void shouldKeepLegacySha256Checksum() throws Exception {
+        HumedProductEncoder encoder = encoder(HumedProductEncoder.ChecksumAlgorithm.SHA256);
+        HumedRawProduct product = product(new BigDecimal("12.50"));
+
+        String legacy = String.join("|",
+                product.getSku(),
+                product.getTitle(),
+                "",
+                product.getPricePurchase().toPlainString(),
+                product.getPriceRetail().toPlainString(),
+                product.getWeightGrams().toString(),
+                product.getAvailability(),
+                objectMapper.writeValueAsString(product.getCategories()),
+                objectMapper.writeValueAsString(product.getImages()),
+                objectMapper.writeValueAsString(product.getAttributes()));
+        String expected = HexFormat.of().formatHex(
+                MessageDigest.getInstance("SHA-256").digest(legacy.getBytes(StandardCharsets.UTF_8)));
+
+        HumedProductEncoder.EncodedProduct encoded = encoder.encode(product);
+        assertEquals(expected, encoded.checksum());
+        assertEquals(expected, encoder.checksum(product));
+        assertEquals(objectMapper.writeValueAsString(product.getCategories()), encoded.categoriesJson());
+        assertEquals("[\"https://example.com/a.jpg\"]", encoded.imagesJson());
+        assertEquals("{\"Balenie\":\"10\",\"Paleta\":\"480\"}", encoded.attributesJson());
+    }
+
+    @Test
+    void shouldIgnoreScaleAndAttributeOrderWithMurmur3() {
+        HumedProductEncoder encoder = encoder(HumedProductEncoder.ChecksumAlgorithm.MURMUR3);
+
+        HumedRawProduct a = product(new BigDecimal("12.50"));
+        HumedRawProduct b = product(new BigDecimal("12.5000"));
+        Map<String, String> reversed = new LinkedHashMap<>();
+        reversed.put("Paleta", "480");
+        reversed.put("Balenie", "10");
+        b.setAttributes(reversed);
+
+        String checksum = encoder.checksum(a);
+        assertEquals(32, checksum.length());
+        assertEquals(checksum, encoder.checksum(b));
+        assertEquals(checksum, encoder.encode(b).checksum());
+
+        b.setTitle("Iný názov");
+        assertNotEquals(checksum, encoder.checksum(b));
+    }
+
+    @Test
+    void shouldChangeOnlyAffectedFieldGroupHash() {
+        HumedProductEncoder encoder = encoder(HumedProductEncoder.ChecksumAlgorithm.SHA256);
+        HumedRawProduct product = product(new BigDecimal("12.50"));
+        long[] before = encoder.encode(product).fieldHashes();
+
+        product.setPriceRetail(new BigDecimal("13.90"));
+        long[] after = encoder.encode(product).fieldHashes();
+
+        assertEquals(HumedProductEncoder.FieldGroup.values().length, after.length);
+        for (HumedProductEncoder.FieldGroup group : HumedProductEncoder.FieldGroup.values()) {
+            int i = group.ordinal();
+            if (group == HumedProductEncoder.FieldGroup.PRICE) {
+                assertNotEquals(before[i], after[i]);
+            } else {
+                assertEquals(before[i], after[i], group.name());
+            }
+        }
+    }
+
+    private HumedProductEncoder encoder(HumedProductEncoder.ChecksumAlgorithm algorithm) {
+        HumedConfig config = new HumedConfig();
+        config.setChecksumAlgorithm(algorithm);
+        return new HumedProductEncoder(objectMapper, config);
+    }
+
+    private HumedRawProduct product(BigDecimal retail) {
+        HumedRawProduct product = new HumedRawProduct();
+        product.setFeedId("1001");
+        product.setSku("HU-1001");
+        product.setTitle("Rukavice nitrilové M");
+        product.setPricePurchase(new BigDecimal("8.1000"));
+        product.setPriceRetail(retail);
+        product.setWeightGrams(250);
+        product.setAvailability("in stock");
+        product.addCategory(new HumedRawProduct.HumedCategory("137", "Zdravotnícky materiál > Rukavice"));
+        product.addImage("https://example.com/a.jpg");
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("Balenie", "10");
+        attributes.put("Paleta", "480");
+        product.setAttributes(attributes);
+        return product;
+    }
+}
@@ -0,0 +1,25 @@
+package sk.pcola.etl.staging.humed;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HumedSeenIdsTest {
+
+    @Test
+    void shouldCollectNumericAndOtherFeedIds() {
+        HumedSeenIds seen = new HumedSeenIds();
+        seen.add("922");
+        seen.add("922");
+        seen.add("0922");
+        seen.add("HU-7");
+        seen.add("999999999");
+        seen.add(null);
+
+        assertEquals(4, seen.size());
+        assertEquals(Set.of("922", "0922", "HU-7", "999999999"), Set.copyOf(Arrays.asList(seen.toArray())));
+    }
+}
@@ -0,0 +1,119 @@
+package sk.pcola.etl.staging.humed;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class HumedUpsertPipelineTest {
+
+    @Test
+    void shouldSumResultsInlineMode() {
+        HumedStagingService staging = mock(HumedStagingService.class);
+        when(staging.upsertBatch(anyList())).thenAnswer(inv -> {
+            List<?> batch = inv.getArgument(0);
+            return new HumedStagingService.UpsertResult(batch.size(), 0, 0, 0);
+        });
+
+        HumedStagingService.UpsertResult result;
+        try (HumedUpsertPipeline pipeline = new HumedUpsertPipeline(staging::upsertBatch, null, 10, 0, 4)) {
+            for (int i = 0; i < 25; i++) {
+                pipeline.accept(product(i));
+            }
+            result = pipeline.finish();
+            assertEquals(25, pipeline.committedItems());
+        }
+
+        assertEquals(25, result.inserted());
+        verify(staging, times(3)).upsertBatch(anyList());
+    }
+
+    @Test
+    void shouldSumResultsWithWriterThreads() {
+        HumedStagingService staging = mock(HumedStagingService.class);
+        when(staging.upsertBatch(anyList())).thenAnswer(inv -> {
+            List<?> batch = inv.getArgument(0);
+            return new HumedStagingService.UpsertResult(0, 1, batch.size() - 1, 0);
+        });
+
+        HumedStagingService.UpsertResult result;
+        try (HumedUpsertPipeline pipeline = new HumedUpsertPipeline(staging::upsertBatch, null, 7, 3, 2)) {
+            for (int i = 0; i < 100; i++) {
+                pipeline.accept(product(i));
+            }
+            result = pipeline.finish();
+            assertEquals(100, pipeline.committedItems());
+        }
+
+        assertEquals(100, result.total());
+        assertEquals(15, result.updated());
+    }
+
+    @Test
+    void shouldPropagateWriterFailure() {
+        HumedStagingService staging = mock(HumedStagingService.class);
+        when(staging.upsertBatch(anyList())).thenThrow(new IllegalStateException("DB down"));
+
+        try (HumedUpsertPipeline pipeline = new HumedUpsertPipeline(staging::upsertBatch, null, 5, 2, 1)) {
+            RuntimeException e = assertThrows(RuntimeException.class, () -> {
+                for (int i = 0; i < 1000; i++) {
+                    pipeline.accept(product(i));
+                }
+                pipeline.finish();
+            });
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            assertEquals(0, pipeline.committedItems());
+        }
+    }
+
+    @Test
+    void shouldCountSkippedUnchangedInFeedOrder() {
+        HumedStagingService staging = mock(HumedStagingService.class);
+        when(staging.upsertBatch(anyList())).thenAnswer(inv -> {
+            List<?> batch = inv.getArgument(0);
+            return new HumedStagingService.UpsertResult(0, batch.size(), 0, 0);
+        });
+
+        HumedStagingService.UpsertResult result;
+        try (HumedUpsertPipeline pipeline = new HumedUpsertPipeline(staging::upsertBatch,
+                p -> Integer.parseInt(p.getFeedId()) % 10 != 0, 5, 2, 2)) {
+            for (int i = 0; i < 100; i++) {
+                pipeline.accept(product(i));
+            }
+            result = pipeline.finish();
+            assertEquals(100, pipeline.committedItems());
+        }
+
+        assertEquals(10, result.updated());
+        assertEquals(90, result.unchanged());
+        verify(staging, times(2)).upsertBatch(anyList());
+    }
+
+    @Test
+    void shouldReportCheckpointsOfCommittedPrefix() {
+        HumedStagingService staging = mock(HumedStagingService.class);
+        when(staging.upsertBatch(anyList())).thenReturn(new HumedStagingService.UpsertResult(0, 0, 0, 0));
+
+        List<Long> checkpoints = new ArrayList<>();
+        try (HumedUpsertPipeline pipeline = new HumedUpsertPipeline(staging::upsertBatch, null, 10, 0, 2)) {
+            pipeline.onCheckpoint(30, checkpoints::add);
+            for (int i = 0; i < 95; i++) {
+                pipeline.accept(product(i));
+            }
+            pipeline.finish();
+        }
+
+        assertEquals(List.of(30L, 60L, 90L), checkpoints);
+    }
+
+    private static HumedRawProduct product(int i) {
+        HumedRawProduct p = new HumedRawProduct();
+        p.setFeedId(String.valueOf(i));
+        p.setSku("SKU" + i);
+        return p;
+    }
+}
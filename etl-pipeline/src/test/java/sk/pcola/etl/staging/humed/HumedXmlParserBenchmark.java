@@ -0,0 +1,165 @@
+package sk.pcola.etl.staging.humed;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH porovnanie StAX backendov HumedXmlParser na syntetických feedoch (10k, 100k, 1M itemov).
+ *
+ * Nie je súčasťou bežných testov (surefire ho nespúšťa). Spustenie cez profil benchmark
+ * (samostatná JVM s testovým classpath, aby JMH fork našiel triedy benchmarku):
+ * <pre>
+ *   mvn -Pbenchmark test-compile exec:exec
+ * </pre>
+ * Argumenty JMH sa dajú zúžiť, napr. rýchly beh jedného backendu:
+ * <pre>
+ *   mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="-p backend=aalto -p items=10000 -wi 1 -i 1 -w 1s -r 1s"
+ * </pre>
+ * Výstup obsahuje items/s (AuxCounters) a alokáciu na item z GC profilera
+ * (gc.alloc.rate.norm na jedno parsovanie / počet itemov).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dorg.slf4j.simpleLogger.log.sk.pcola=warn"})
+public class HumedXmlParserBenchmark {
+
+    @Param({"jdk", "woodstox", "aalto"})
+    public String backend;
+
+    @Param({"10000", "100000", "1000000"})
+    public int items;
+
+    private Path feed;
+    private HumedXmlParser parser;
+
+    /**
+     * Počet rozparsovaných itemov - JMH ho reportuje ako items/s.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ItemCounter {
+        public long parsedItems;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            parsedItems = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        parser = new HumedXmlParser(backend);
+        feed = Files.createTempFile("humed_bench_" + items + "_", ".xml");
+        writeFeed(feed, items);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(feed);
+    }
+
+    @Benchmark
+    public int parse(ItemCounter counter, Blackhole blackhole) {
+        int count = parser.parse(feed, blackhole::consume);
+        counter.parsedItems += count;
+        return count;
+    }
+
+    /**
+     * Syntetický feed v tvare HUMED exportu - kategórie, obrázky, CDATA popis, atribúty.
+     */
+    static void writeFeed(Path target, int items) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            w.write("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <rss version="2.0" xmlns:g="http://base.google.com/ns/1.0">
+                <channel>
+                <title>HUMED</title>
+                """);
+            for (int i = 1; i <= items; i++) {
+                w.write("<item>\n");
+                w.write("  <g:id>" + i + "</g:id>\n");
+                w.write("  <g:sku>HU-" + i + "</g:sku>\n");
+                w.write("  <g:gtin>858" + (1_000_000_000L + i) + "</g:gtin>\n");
+                w.write("  <g:title>Nitrilové rukavice veľkosť M &gt; balenie " + (i % 50) + "</g:title>\n");
+                w.write("  <description><![CDATA[<p>Jednorazové vyšetrovacie rukavice, nepúdrované, "
+                        + "balenie " + (i % 50) + " ks. Vhodné pre zdravotníctvo.</p>]]></description>\n");
+                w.write("  <g:link>https://www.humed.sk/produkt/" + i + "</g:link>\n");
+                w.write("  <g:cenaVhumede>" + (i % 97) + ".467</g:cenaVhumede>\n");
+                w.write("  <g:price>" + (i % 97 + 5) + ".931 EUR</g:price>\n");
+                w.write("  <g:weight>" + (i % 900) + ".00g</g:weight>\n");
+                w.write("  <g:availability>in stock</g:availability>\n");
+                w.write("  <g:condition>new</g:condition>\n");
+                w.write("  <g:image_link>https://www.humed.sk/image/" + i + ".jpg</g:image_link>\n");
+                w.write("  <g:additional_image_link>https://www.humed.sk/image/" + i + "_2.jpg</g:additional_image_link>\n");
+                w.write("  <categories>\n");
+                w.write("    <category><category_name>Zdravotnícky materiál</category_name>"
+                        + "<category_id>" + (i % 20) + "</category_id></category>\n");
+                w.write("    <category><category_name>Zdravotnícky materiál &gt; Rukavice</category_name>"
+                        + "<category_id>" + (100 + i % 20) + "</category_id></category>\n");
+                w.write("  </categories>\n");
+                w.write("  <g:additional_fields>\n");
+                w.write("    <g:additional_field><name>Balenie</name><value>" + (i % 50 + 1) + "</value></g:additional_field>\n");
+                w.write("    <g:additional_field><name>Paleta</name><value>480</value></g:additional_field>\n");
+                w.write("  </g:additional_fields>\n");
+                w.write("</item>\n");
+            }
+            w.write("</channel>\n</rss>\n");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(HumedXmlParserBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.printf("%-10s %10s %15s %15s%n", "backend", "items", "items/s", "bytes/item");
+        for (RunResult run : results) {
+            String runBackend = run.getParams().getParam("backend");
+            int runItems = Integer.parseInt(run.getParams().getParam("items"));
+            Result<?> throughput = run.getSecondaryResults().get("parsedItems");
+            Result<?> allocPerOp = run.getSecondaryResults().get("gc.alloc.rate.norm");
+            System.out.printf("%-10s %10d %15.0f %15.1f%n",
+                    runBackend,
+                    runItems,
+                    throughput != null ? throughput.getScore() : Double.NaN,
+                    allocPerOp != null ? allocPerOp.getScore() / runItems : Double.NaN);
+        }
+    }
+}
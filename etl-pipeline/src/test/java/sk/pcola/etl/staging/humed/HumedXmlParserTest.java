@@ -174,4 +174,77 @@ class HumedXmlParserTest {
 
         assertEquals(2, products.getFirst().getImages().size());
     }
+
+    @Test
+    void shouldParseShardsInParallel(@TempDir Path tempDir) throws Exception {
+        StringBuilder xml = new StringBuilder("""
+            <?xml version="1.0" encoding="UTF-8"?>
+            <rss version="2.0" xmlns:g="http://base.google.com/ns/1.0">
+            <channel>
+            <title>HUMED</title>
+            <!-- <item> v komentári nie je produkt -->
+            """);
+        for (int i = 1; i <= 200; i++) {
+            xml.append("<item>\n")
+                    .append("  <g:id>").append(i).append("</g:id>\n")
+                    .append("  <g:title>Produkt č. ").append(i).append("</g:title>\n")
+                    .append("  <description><![CDATA[Text s <item> a </item> vo vnútri]]></description>\n")
+                    .append("</item>\n");
+        }
+        xml.append("</channel>\n</rss>\n");
+
+        Path feedFile = tempDir.resolve("sharded_feed.xml");
+        Files.writeString(feedFile, xml);
+
+        List<HumedRawProduct> ordered = new ArrayList<>();
+        assertEquals(200, parser.parseParallel(feedFile, 4, true, ordered::add));
+        for (int i = 0; i < 200; i++) {
+            assertEquals(String.valueOf(i + 1), ordered.get(i).getFeedId());
+        }
+        assertEquals("Produkt č. 7", ordered.get(6).getTitle());
+        assertEquals("Text s <item> a </item> vo vnútri", ordered.get(6).getDescription());
+
+        List<HumedRawProduct> unordered = new ArrayList<>();
+        assertEquals(200, parser.parseParallel(feedFile, 4, false, unordered::add));
+        assertEquals(
+                ordered.stream().map(HumedRawProduct::getFeedId).sorted().toList(),
+                unordered.stream().map(HumedRawProduct::getFeedId).sorted().toList());
+    }
+
+    @Test
+    void shouldParseSameWithAllStaxBackends(@TempDir Path tempDir) throws Exception {
+        Path feedFile = tempDir.resolve("bench_feed.xml");
+        HumedXmlParserBenchmark.writeFeed(feedFile, 3);
+
+        for (String backend : List.of("jdk", "woodstox", "aalto")) {
+            List<HumedRawProduct> products = new HumedXmlParser(backend).parseAll(feedFile);
+
+            assertEquals(3, products.size(), backend);
+            HumedRawProduct product = products.get(1);
+            assertEquals("2", product.getFeedId(), backend);
+            assertEquals("Nitrilové rukavice veľkosť M > balenie 2", product.getTitle(), backend);
+            assertEquals(2, product.getCategories().size(), backend);
+            assertEquals(2, product.getImages().size(), backend);
+            assertEquals("3", product.getAttributes().get("Balenie"), backend);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new HumedXmlParser("com.example.Missing"));
+    }
+
+    @Test
+    void shouldShareRepeatedValuesWithinOneParse(@TempDir Path tempDir) throws Exception {
+        Path feedFile = tempDir.resolve("pooled_feed.xml");
+        HumedXmlParserBenchmark.writeFeed(feedFile, 60);
+
+        List<HumedRawProduct> products = parser.parseAll(feedFile);
+        HumedRawProduct first = products.get(0);
+        HumedRawProduct other = products.get(20);
+
+        assertSame(first.getCategories().get(0), other.getCategories().get(0));
+        assertSame(first.getAvailability(), other.getAvailability());
+        assertSame(
+                first.getAttributes().keySet().stream().filter("Paleta"::equals).findFirst().orElseThrow(),
+                other.getAttributes().keySet().stream().filter("Paleta"::equals).findFirst().orElseThrow());
+        assertEquals(new HumedRawProduct.HumedCategory("1", "A"), new HumedRawProduct.HumedCategory("1", "A"));
+    }
 }